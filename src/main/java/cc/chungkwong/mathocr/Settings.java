@@ -198,6 +198,12 @@ public class Settings{
 		boolMap.put("MEDIAN_FILTER",pref.getBoolean("MEDIAN_FILTER",false));
 		boolMap.put("MEAN_FILTER",pref.getBoolean("MEAN_FILTER",false));
 		boolMap.put("NOISE_REMOVE",pref.getBoolean("NOISE_REMOVE",false));
+		boolMap.put("FUSED_PREPROCESS",pref.getBoolean("FUSED_PREPROCESS",true));
+		boolMap.put("VECTOR_KERNEL",pref.getBoolean("VECTOR_KERNEL",true));
+		boolMap.put("AUTO_CROP",pref.getBoolean("AUTO_CROP",false));
+		boolMap.put("AUTO_RESCALE",pref.getBoolean("AUTO_RESCALE",false));
+		intMap.put("MEDIAN_FILTER_RADIUS",pref.getInt("MEDIAN_FILTER_RADIUS",1));
+		intMap.put("TARGET_STROKE_WIDTH",pref.getInt("TARGET_STROKE_WIDTH",3));
 		intMap.put("KFILL_WINDOW",pref.getInt("KFILL_WINDOW",3));
 		intMap.put("NOISE_THREHOLD",pref.getInt("NOISE_THREHOLD",2));
 		intMap.put("MANUAL_THREHOLD_LIMIT",pref.getInt("MANUAL_THREHOLD_LIMIT",195));
@@ -17,43 +17,62 @@
 package cc.chungkwong.mathocr.common;
 import java.util.*;
 /**
- * A data structure representing partition of objects
+ * A data structure representing partition of objects. Parents are stored in
+ * a int array, roots being their own parents, and paths are halved when
+ * searching for roots.
+ *
+ * Without a Linkable, the partition works as a table of label equivalences:
+ * sets are just recorded during union and resolved once by getSetIndices.
  */
 public class Partition{
-	private final ArrayList<Integer> parent;
-	private final ArrayList<Integer> rank;
+	private static final int INITIAL_CAPACITY=16;
+	private int[] parent;
+	private byte[] rank;
+	private int size, sets;
 	private final Linkable work;
+	/**
+	 * Construct a Partition without any set, which only records equivalences
+	 */
+	public Partition(){
+		this(null);
+	}
 	/**
 	 * Construct a Partition without any set
 	 *
-	 * @param work indicating addition work when linking two sets
+	 * @param work indicating addition work when linking two sets, or null
 	 */
 	public Partition(Linkable work){
-		parent=new ArrayList<>();
-		rank=new ArrayList<>();
+		parent=new int[INITIAL_CAPACITY];
+		rank=new byte[INITIAL_CAPACITY];
 		this.work=work;
 	}
 	/**
 	 * Construct a Partition with some sets
 	 *
-	 * @param work indicating addition work when linking two sets
+	 * @param work indicating addition work when linking two sets, or null
 	 * @param n number of set containing exactly one element at frist
 	 */
 	public Partition(Linkable work,int n){
-		parent=new ArrayList<>(n);
-		rank=new ArrayList<>(n);
+		parent=new int[Math.max(n,INITIAL_CAPACITY)];
+		rank=new byte[parent.length];
 		for(int i=0;i<n;i++){
-			parent.add(null);
-			rank.add(0);
+			parent[i]=i;
 		}
+		size=n;
+		sets=n;
 		this.work=work;
 	}
 	/**
 	 * Make a new set containing exactly one element
 	 */
 	public void makeSet(){
-		parent.add(null);
-		rank.add(0);
+		if(size==parent.length){
+			parent=Arrays.copyOf(parent,size*2);
+			rank=Arrays.copyOf(rank,size*2);
+		}
+		parent[size]=size;
+		++size;
+		++sets;
 	}
 	/**
 	 * Find the root of the set containing a element
@@ -62,13 +81,11 @@ public class Partition{
 	 * @return root
 	 */
 	public int findRoot(int n){
-		LinkedList<Integer> stack=new LinkedList<>();
-		while(parent.get(n)!=null){
-			stack.push(n);
-			n=parent.get(n);
-		}
-		while(!stack.isEmpty()){
-			parent.set(stack.pop(),n);
+		int[] parent=this.parent;
+		while(parent[n]!=n){
+			int grandparent=parent[parent[n]];
+			parent[n]=grandparent;
+			n=grandparent;
 		}
 		return n;
 	}
@@ -82,19 +99,20 @@ public class Partition{
 		if(m==n){
 			return;
 		}
-		int rankm=rank.get(m), rankn=rank.get(n);
+		--sets;
+		int rankm=rank[m], rankn=rank[n];
 		if(rankm>rankn){
-			parent.set(n,m);
+			parent[n]=m;
 			if(work!=null){
 				work.link(n,m);
 			}
 		}else{
-			parent.set(m,n);
+			parent[m]=n;
 			if(work!=null){
 				work.link(m,n);
 			}
 			if(rankm==rankn){
-				rank.set(n,rankn+1);
+				rank[n]=(byte)(rankn+1);
 			}
 		}
 	}
@@ -114,6 +132,37 @@ public class Partition{
 	 * @return
 	 */
 	public boolean isRoot(int n){
-		return parent.get(n)==null;
+		return parent[n]==n;
+	}
+	/**
+	 * @return number of elements
+	 */
+	public int size(){
+		return size;
+	}
+	/**
+	 * @return number of sets
+	 */
+	public int getSetCount(){
+		return sets;
+	}
+	/**
+	 * Resolve the equivalences, sets are numbered from 0 in the order of
+	 * their smallest elements, so the result does not depend on the order of
+	 * unions
+	 *
+	 * @return the indices of the sets containing each element
+	 */
+	public int[] getSetIndices(){
+		int[] indices=new int[size];
+		Arrays.fill(indices,-1);
+		for(int i=0, curr=0;i<size;i++){
+			int root=findRoot(i);
+			if(indices[root]==-1){
+				indices[root]=curr++;
+			}
+			indices[i]=indices[root];
+		}
+		return indices;
 	}
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2019 Chan Chung Kwong
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.chungkwong.mathocr.common;
+import java.util.*;
+import java.util.concurrent.*;
+/**
+ * Helper to process horizontal strips of a image in parallel
+ *
+ * @author Chan Chung Kwong
+ */
+public class Strips{
+	/**
+	 * Work on a strip
+	 */
+	public interface Task{
+		/**
+		 * To be called for each strip
+		 *
+		 * @param index the index of the strip
+		 * @param start the first row of the strip
+		 * @param end the row after the last row of the strip
+		 */
+		public void process(int index,int start,int end);
+	}
+	/**
+	 * Split rows into strips
+	 *
+	 * @param pool the pool that will be used, null for sequential processing
+	 * @param height number of rows
+	 * @param minHeight minimum number of rows in a strip
+	 * @return boundaries of the strips, strip i consists of rows from
+	 * bounds[i] to bounds[i+1]-1
+	 */
+	public static int[] split(ForkJoinPool pool,int height,int minHeight){
+		int count=pool==null?1:Math.max(1,Math.min(pool.getParallelism(),height/Math.max(minHeight,1)));
+		int[] bounds=new int[count+1];
+		for(int i=0;i<=count;i++){
+			bounds[i]=(int)((long)height*i/count);
+		}
+		return bounds;
+	}
+	/**
+	 * Process strips in parallel and wait for all of them to complete
+	 *
+	 * @param pool the pool to be used, null for sequential processing
+	 * @param bounds boundaries of the strips
+	 * @param task work to be done on each strip
+	 */
+	public static void forEach(ForkJoinPool pool,int[] bounds,Task task){
+		int count=bounds.length-1;
+		if(pool==null||count<=1){
+			for(int i=0;i<count;i++){
+				task.process(i,bounds[i],bounds[i+1]);
+			}
+			return;
+		}
+		List<ForkJoinTask<?>> tasks=new ArrayList<>(count);
+		for(int i=0;i<count;i++){
+			int index=i;
+			tasks.add(pool.submit(()->task.process(index,bounds[index],bounds[index+1])));
+		}
+		for(ForkJoinTask<?> task0:tasks){
+			task0.join();
+		}
+	}
+}
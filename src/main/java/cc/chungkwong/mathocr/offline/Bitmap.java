@@ -15,6 +15,7 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 package cc.chungkwong.mathocr.offline;
+import cc.chungkwong.mathocr.offline.preprocessor.*;
 import java.awt.image.*;
 import java.util.*;
 /**
@@ -44,51 +45,42 @@ public class Bitmap{
 	 * @param image source of pixels
 	 */
 	public Bitmap(BufferedImage image){
-		int width=image.getWidth();
-		int height=image.getHeight();
-		byte[] rgb=((DataBufferByte)image.getRaster().getDataBuffer()).getData();
-		if(isPaddingNeeded(rgb,width,height)){
+		this(BinaryView.of(image));
+	}
+	/**
+	 * Create a image, the pixels are copied
+	 *
+	 * @param view source of pixels
+	 */
+	public Bitmap(BinaryView view){
+		int width=view.getWidth();
+		int height=view.getHeight();
+		byte[] rgb=view.getData();
+		int pad=isPaddingNeeded(view)?1:0;
+		if(pad!=0){
 			System.out.println("padding");
-			data=new byte[((width+2)*(height+2))];
-			Arrays.fill(data,(byte)0xFF);
-			for(int i=0, k=0, ind=width+2;i<height;i++){
-				++ind;
-				for(int j=0;j<width;j++,ind++,k++){
-					if(rgb[k]==0){
-						data[ind]=0;
-					}
-				}
-				++ind;
-			}
-			this.width=width+2;
-			this.height=height+2;
-		}else{
-			data=new byte[(width*height)];
-			Arrays.fill(data,(byte)0xFF);
-			for(int i=0, ind=0;i<height;i++){
-				for(int j=0;j<width;j++,ind++){
-					if(rgb[ind]==0x0){
-						data[ind]=0;
-					}
+		}
+		this.width=width+2*pad;
+		this.height=height+2*pad;
+		data=new byte[this.width*this.height];
+		Arrays.fill(data,(byte)0xFF);
+		for(int i=0, ind=pad*this.width+pad;i<height;i++,ind+=this.width){
+			for(int j=0, k=view.getIndex(0,i);j<width;j++,k++){
+				if(rgb[k]==0){
+					data[ind+j]=0;
 				}
 			}
-			this.width=width;
-			this.height=height;
 		}
 	}
-	private boolean isPaddingNeeded(byte[] rgb,int width,int height){
+	private boolean isPaddingNeeded(BinaryView view){
+		int width=view.getWidth(), height=view.getHeight();
 		for(int j=0;j<width;j++){
-			if(rgb[j]==0){
-				return true;
-			}
-		}
-		for(int i=1, ind=width;i<height;i++,ind+=width){
-			if(rgb[ind]==0||rgb[ind-1]==0){
+			if(view.isBlack(j,0)||view.isBlack(j,height-1)){
 				return true;
 			}
 		}
-		for(int j=1, ind=width*height-1;j<width;j++,--ind){
-			if(rgb[ind]==0){
+		for(int i=0;i<height;i++){
+			if(view.isBlack(0,i)||view.isBlack(width-1,i)){
 				return true;
 			}
 		}
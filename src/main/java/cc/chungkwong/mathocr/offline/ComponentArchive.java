@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2019 Chan Chung Kwong
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.chungkwong.mathocr.offline;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+/**
+ * File holding many connected components. The file starts with a magic
+ * number, the version and the number of components, followed by the offsets
+ * of the components(and the end of the last one) as longs, and then the
+ * components encoded by ComponentCodec. The file is memory-mapped when read,
+ * so that components are decoded only when they are accessed.
+ *
+ * @author Chan Chung Kwong
+ */
+public final class ComponentArchive extends AbstractList<ConnectedComponent> implements RandomAccess,Closeable{
+	private static final int MAGIC=0x4D4F4343;
+	/**
+	 * The current version of the archive format
+	 */
+	public static final int VERSION=1;
+	private static final int HEADER_SIZE=12;
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final int size;
+	/**
+	 * Open a archive
+	 *
+	 * @param file the file
+	 * @throws IOException if the file cannot be read or is not a archive
+	 */
+	public ComponentArchive(Path file) throws IOException{
+		channel=FileChannel.open(file,StandardOpenOption.READ);
+		try{
+			long length=channel.size();
+			if(length>Integer.MAX_VALUE){
+				throw new IOException("Archive too large to be mapped");
+			}
+			buffer=channel.map(FileChannel.MapMode.READ_ONLY,0,length);
+			if(length<HEADER_SIZE||buffer.getInt(0)!=MAGIC){
+				throw new IOException("Not a component archive");
+			}
+			int version=buffer.getInt(4);
+			if(version!=VERSION){
+				throw new IOException("Unsupported version: "+version);
+			}
+			size=buffer.getInt(8);
+			if(size<0||HEADER_SIZE+(size+1L)*8>length||buffer.getLong(HEADER_SIZE+size*8)>length){
+				throw new IOException("Archive truncated");
+			}
+		}catch(IOException|RuntimeException ex){
+			channel.close();
+			throw ex;
+		}
+	}
+	/**
+	 * Write components into a archive
+	 *
+	 * @param file the file
+	 * @param components the components
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(Path file,Collection<ConnectedComponent> components) throws IOException{
+		int count=components.size();
+		long[] offsets=new long[count+1];
+		try(FileChannel out=FileChannel.open(file,StandardOpenOption.CREATE,StandardOpenOption.TRUNCATE_EXISTING,StandardOpenOption.WRITE)){
+			long position=HEADER_SIZE+(count+1L)*8;
+			out.position(position);
+			ByteBuffer data=ByteBuffer.allocate(1<<16);
+			ComponentCodec codec=new ComponentCodec();
+			int i=0;
+			for(ConnectedComponent component:components){
+				codec.write(component);
+				offsets[i++]=position;
+				position+=codec.getLength();
+				if(codec.getLength()>data.remaining()){
+					flush(out,data);
+				}
+				if(codec.getLength()>data.remaining()){
+					ByteBuffer large=ByteBuffer.wrap(codec.getBuffer(),0,codec.getLength());
+					while(large.hasRemaining()){
+						out.write(large);
+					}
+				}else{
+					data.put(codec.getBuffer(),0,codec.getLength());
+				}
+			}
+			offsets[count]=position;
+			flush(out,data);
+			ByteBuffer header=ByteBuffer.allocate(HEADER_SIZE+(count+1)*8);
+			header.putInt(MAGIC).putInt(VERSION).putInt(count);
+			header.asLongBuffer().put(offsets);
+			header.rewind();
+			out.position(0);
+			while(header.hasRemaining()){
+				out.write(header);
+			}
+		}
+	}
+	private static void flush(FileChannel out,ByteBuffer data) throws IOException{
+		data.flip();
+		while(data.hasRemaining()){
+			out.write(data);
+		}
+		data.clear();
+	}
+	/**
+	 * Decode a component
+	 *
+	 * @param index the index of the component
+	 * @return the component
+	 */
+	@Override
+	public ConnectedComponent get(int index){
+		if(index<0||index>=size){
+			throw new IndexOutOfBoundsException();
+		}
+		ByteBuffer in=buffer.duplicate();
+		in.position((int)buffer.getLong(HEADER_SIZE+index*8));
+		return ComponentCodec.decode(in);
+	}
+	/**
+	 * @return number of components in the archive
+	 */
+	@Override
+	public int size(){
+		return size;
+	}
+	/**
+	 * Close the file, the mapping is released when the archive is garbage
+	 * collected
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException{
+		channel.close();
+	}
+}
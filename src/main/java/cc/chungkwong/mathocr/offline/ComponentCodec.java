@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2019 Chan Chung Kwong
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.chungkwong.mathocr.offline;
+import java.nio.*;
+import java.util.*;
+/**
+ * Compact binary encoding of connected components without limit on size.
+ * Version 1 consists of
+ * <ol>
+ * <li>the version as a byte</li>
+ * <li>left, top, right-left and bottom-top</li>
+ * <li>the number of runs</li>
+ * <li>for each run, the change of y from the previous run(or top), x relative
+ * to the end of the previous run on the same row(or left) and the length
+ * minus one</li>
+ * </ol>
+ * All the integers after the version are varints, signed ones are zigzag
+ * encoded.
+ *
+ * @author Chan Chung Kwong
+ */
+public final class ComponentCodec{
+	/**
+	 * The current version of the encoding
+	 */
+	public static final int VERSION=1;
+	private byte[] buf=new byte[64];
+	private int length;
+	/**
+	 * Create a encoder, which can be reused
+	 */
+	public ComponentCodec(){
+	}
+	/**
+	 * Encode a component
+	 *
+	 * @param component the component
+	 * @return the encoded bytes
+	 */
+	public static byte[] encode(ConnectedComponent component){
+		ComponentCodec codec=new ComponentCodec();
+		codec.write(component);
+		return Arrays.copyOf(codec.buf,codec.length);
+	}
+	/**
+	 * Encode a component into the internal buffer of this encoder, replacing
+	 * the previous one
+	 *
+	 * @param component the component
+	 */
+	public void write(ConnectedComponent component){
+		length=0;
+		buf[length++]=VERSION;
+		int left=component.getLeft(), top=component.getTop();
+		writeSigned(left);
+		writeSigned(top);
+		writeSigned(component.getRight()-left);
+		writeSigned(component.getBottom()-top);
+		int size=component.getRunLengthCount();
+		writeUnsigned(size);
+		int lastY=top, lastEnd=left;
+		for(int r=0;r<size;r++){
+			int y=component.getRunY(r), x=component.getRunX(r), count=component.getRunCount(r);
+			writeSigned(y-lastY);
+			writeSigned(r>0&&y==lastY?x-lastEnd:x-left);
+			writeUnsigned(count);
+			lastY=y;
+			lastEnd=x+count+1;
+		}
+	}
+	/**
+	 * @return the internal buffer holding the last encoded component
+	 */
+	public byte[] getBuffer(){
+		return buf;
+	}
+	/**
+	 * @return the length of the last encoded component
+	 */
+	public int getLength(){
+		return length;
+	}
+	private void writeSigned(int value){
+		writeUnsigned((value<<1)^(value>>31));
+	}
+	private void writeUnsigned(int value){
+		if(length+5>buf.length){
+			buf=Arrays.copyOf(buf,buf.length*2);
+		}
+		while((value&~0x7F)!=0){
+			buf[length++]=(byte)((value&0x7F)|0x80);
+			value>>>=7;
+		}
+		buf[length++]=(byte)value;
+	}
+	/**
+	 * Decode a component
+	 *
+	 * @param data the encoded bytes
+	 * @return the component
+	 */
+	public static ConnectedComponent decode(byte[] data){
+		return decode(ByteBuffer.wrap(data));
+	}
+	/**
+	 * Decode a component from the current position of a buffer, the position
+	 * is moved to the end of the component
+	 *
+	 * @param in the buffer
+	 * @return the component
+	 */
+	public static ConnectedComponent decode(ByteBuffer in){
+		int version=in.get();
+		if(version!=VERSION){
+			throw new IllegalArgumentException("Unsupported version: "+version);
+		}
+		int left=readSigned(in), top=readSigned(in);
+		int right=left+readSigned(in), bottom=top+readSigned(in);
+		int size=readUnsigned(in);
+		ConnectedComponent component=new ConnectedComponent();
+		int lastY=top, lastEnd=left;
+		for(int r=0;r<size;r++){
+			int y=lastY+readSigned(in);
+			int x=(r>0&&y==lastY?lastEnd:left)+readSigned(in);
+			int count=readUnsigned(in);
+			component.addRunLengthToLast(y,x,count);
+			lastY=y;
+			lastEnd=x+count+1;
+		}
+		component.setBounds(left,right,top,bottom);
+		return component;
+	}
+	private static int readSigned(ByteBuffer in){
+		int value=readUnsigned(in);
+		return (value>>>1)^-(value&1);
+	}
+	private static int readUnsigned(ByteBuffer in){
+		int value=0;
+		for(int shift=0;;shift+=7){
+			byte b=in.get();
+			value|=(b&0x7F)<<shift;
+			if(b>=0){
+				return value;
+			}
+		}
+	}
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) 2019 Chan Chung Kwong
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.chungkwong.mathocr.offline;
+import java.util.*;
+import java.util.function.*;
+/**
+ * Packed static R-tree over bounding boxes of connected components. The
+ * components are sorted along a Hilbert curve by their centers and grouped
+ * bottom-up, so the tree is built in O(n log n) and never updated. Bounds are
+ * inclusive as in ConnectedComponent.
+ *
+ * @author Chan Chung Kwong
+ */
+public final class ComponentIndex{
+	private static final int NODE_SIZE=16;
+	private static final int HILBERT_ORDER=1<<16;
+	private final List<ConnectedComponent> components;
+	private final int[] order;
+	private final int[] levelStarts, levelSizes;
+	private final int[] lefts, rights, tops, bottoms;
+	/**
+	 * Build a index
+	 *
+	 * @param components the components, should not be modified while the
+	 * index is in use
+	 */
+	public ComponentIndex(List<ConnectedComponent> components){
+		this.components=components;
+		int n=components.size();
+		long[] keys=new long[n];
+		for(int i=0;i<n;i++){
+			ConnectedComponent component=components.get(i);
+			int x=clamp((component.getLeft()+component.getRight())/2), y=clamp((component.getTop()+component.getBottom())/2);
+			keys[i]=(getHilbertIndex(x,y)<<31)|i;
+		}
+		Arrays.sort(keys);
+		order=new int[n];
+		for(int i=0;i<n;i++){
+			order[i]=(int)(keys[i]&Integer.MAX_VALUE);
+		}
+		int levels=1, total=n;
+		for(int size=n;size>1;size=(size+NODE_SIZE-1)/NODE_SIZE){
+			++levels;
+			total+=(size+NODE_SIZE-1)/NODE_SIZE;
+		}
+		levelStarts=new int[levels];
+		levelSizes=new int[levels];
+		lefts=new int[total];
+		rights=new int[total];
+		tops=new int[total];
+		bottoms=new int[total];
+		for(int i=0;i<n;i++){
+			ConnectedComponent component=components.get(order[i]);
+			lefts[i]=component.getLeft();
+			rights[i]=component.getRight();
+			tops[i]=component.getTop();
+			bottoms[i]=component.getBottom();
+		}
+		levelSizes[0]=n;
+		for(int level=1;level<levels;level++){
+			int childStart=levelStarts[level-1], childSize=levelSizes[level-1];
+			levelStarts[level]=childStart+childSize;
+			levelSizes[level]=(childSize+NODE_SIZE-1)/NODE_SIZE;
+			for(int j=0, i=levelStarts[level];j<levelSizes[level];j++,i++){
+				int left=Integer.MAX_VALUE, right=Integer.MIN_VALUE, top=Integer.MAX_VALUE, bottom=Integer.MIN_VALUE;
+				for(int c=childStart+j*NODE_SIZE, end=childStart+Math.min(childSize,(j+1)*NODE_SIZE);c<end;c++){
+					left=Math.min(left,lefts[c]);
+					right=Math.max(right,rights[c]);
+					top=Math.min(top,tops[c]);
+					bottom=Math.max(bottom,bottoms[c]);
+				}
+				lefts[i]=left;
+				rights[i]=right;
+				tops[i]=top;
+				bottoms[i]=bottom;
+			}
+		}
+	}
+	private static int clamp(int coordinate){
+		return Math.max(0,Math.min(HILBERT_ORDER-1,coordinate));
+	}
+	/**
+	 * Compute the distance of a point along the Hilbert curve
+	 */
+	private static long getHilbertIndex(int x,int y){
+		long d=0;
+		for(int s=HILBERT_ORDER/2;s>0;s/=2){
+			int rx=(x&s)>0?1:0, ry=(y&s)>0?1:0;
+			d+=(long)s*s*((3*rx)^ry);
+			if(ry==0){
+				if(rx==1){
+					x=HILBERT_ORDER-1-x;
+					y=HILBERT_ORDER-1-y;
+				}
+				int t=x;
+				x=y;
+				y=t;
+			}
+		}
+		return d;
+	}
+	/**
+	 * @return the components indexed
+	 */
+	public List<ConnectedComponent> getComponents(){
+		return components;
+	}
+	/**
+	 * Count number of components intersect with a given area
+	 *
+	 * @param left left bound
+	 * @param right right bound
+	 * @param top upper bound
+	 * @param bottom lower bound
+	 * @return the number
+	 */
+	public int count(int left,int right,int top,int bottom){
+		if(order.length==0){
+			return 0;
+		}
+		return count(levelStarts.length-1,0,left,right,top,bottom);
+	}
+	private int count(int level,int node,int left,int right,int top,int bottom){
+		int i=levelStarts[level]+node;
+		if(lefts[i]>right||left>rights[i]||tops[i]>bottom||top>bottoms[i]){
+			return 0;
+		}else if(level==0){
+			return 1;
+		}else if(left<=lefts[i]&&rights[i]<=right&&top<=tops[i]&&bottoms[i]<=bottom){
+			long span=1;
+			for(int l=0;l<level;l++){
+				span*=NODE_SIZE;
+			}
+			return (int)(Math.min((node+1)*span,order.length)-node*span);
+		}else{
+			int c=0;
+			for(int j=node*NODE_SIZE, end=Math.min(levelSizes[level-1],j+NODE_SIZE);j<end;j++){
+				c+=count(level-1,j,left,right,top,bottom);
+			}
+			return c;
+		}
+	}
+	/**
+	 * Find components intersect with a given area
+	 *
+	 * @param left left bound
+	 * @param right right bound
+	 * @param top upper bound
+	 * @param bottom lower bound
+	 * @return the components in the order of the indexed list
+	 */
+	public List<ConnectedComponent> search(int left,int right,int top,int bottom){
+		int[] found=new int[16];
+		int count=0;
+		int[] stack=new int[levelStarts.length*NODE_SIZE], levels=new int[stack.length];
+		int depth=0;
+		if(order.length>0){
+			stack[depth]=0;
+			levels[depth++]=levelStarts.length-1;
+		}
+		while(depth>0){
+			int node=stack[--depth], level=levels[depth];
+			int i=levelStarts[level]+node;
+			if(lefts[i]>right||left>rights[i]||tops[i]>bottom||top>bottoms[i]){
+				continue;
+			}
+			if(level==0){
+				if(count==found.length){
+					found=Arrays.copyOf(found,count*2);
+				}
+				found[count++]=order[node];
+			}else{
+				for(int j=node*NODE_SIZE, end=Math.min(levelSizes[level-1],j+NODE_SIZE);j<end;j++){
+					stack[depth]=j;
+					levels[depth++]=level-1;
+				}
+			}
+		}
+		Arrays.sort(found,0,count);
+		List<ConnectedComponent> result=new ArrayList<>(count);
+		for(int i=0;i<count;i++){
+			result.add(components.get(found[i]));
+		}
+		return result;
+	}
+	/**
+	 * Find the component with the nearest center to a point
+	 *
+	 * @param x the x coordinate of the point
+	 * @param y the y coordinate of the point
+	 * @param filter only components accepted are considered
+	 * @return the component or null if none is accepted
+	 */
+	public ConnectedComponent getNearest(double x,double y,Predicate<ConnectedComponent> filter){
+		List<ConnectedComponent> nearest=getNearest(x,y,1,filter);
+		return nearest.isEmpty()?null:nearest.get(0);
+	}
+	/**
+	 * Find the k components with the nearest centers to a point, centers being
+	 * the centers of the bounding boxes. Components at the same distance are
+	 * ordered as in the indexed list.
+	 *
+	 * @param x the x coordinate of the point
+	 * @param y the y coordinate of the point
+	 * @param k the maximum number of components to be found
+	 * @param filter only components accepted are considered
+	 * @return the components from the nearest one
+	 */
+	public List<ConnectedComponent> getNearest(double x,double y,int k,Predicate<ConnectedComponent> filter){
+		List<ConnectedComponent> result=new ArrayList<>(Math.min(k,order.length));
+		if(order.length==0||k<=0){
+			return result;
+		}
+		Queue queue=new Queue();
+		queue.push(0,levelStarts.length-1,0,0);
+		while(!queue.isEmpty()&&result.size()<k){
+			int level=queue.peekLevel(), node=queue.peekNode();
+			queue.pop();
+			if(level==0){
+				ConnectedComponent component=components.get(order[node]);
+				if(filter.test(component)){
+					result.add(component);
+				}
+			}else{
+				for(int j=node*NODE_SIZE, end=Math.min(levelSizes[level-1],j+NODE_SIZE);j<end;j++){
+					int i=levelStarts[level-1]+j;
+					if(level==1){
+						double dx=(lefts[i]+rights[i])*0.5-x, dy=(tops[i]+bottoms[i])*0.5-y;
+						queue.push(dx*dx+dy*dy,0,j,order[j]);
+					}else{
+						double dx=Math.max(0,Math.max(lefts[i]-x,x-rights[i])), dy=Math.max(0,Math.max(tops[i]-y,y-bottoms[i]));
+						queue.push(dx*dx+dy*dy,level-1,j,0);
+					}
+				}
+			}
+		}
+		return result;
+	}
+	/**
+	 * Binary heap of nodes ordered by distance, nodes go before components at
+	 * the same distance, components at the same distance are ordered by index
+	 */
+	private static final class Queue{
+		private double[] distances=new double[64];
+		private int[] levels=new int[64], nodes=new int[64], ties=new int[64];
+		private int size=0;
+		void push(double distance,int level,int node,int tie){
+			if(size==distances.length){
+				distances=Arrays.copyOf(distances,size*2);
+				levels=Arrays.copyOf(levels,size*2);
+				nodes=Arrays.copyOf(nodes,size*2);
+				ties=Arrays.copyOf(ties,size*2);
+			}
+			int i=size++;
+			while(i>0){
+				int parent=(i-1)/2;
+				if(!before(distance,level,tie,parent)){
+					break;
+				}
+				move(parent,i);
+				i=parent;
+			}
+			distances[i]=distance;
+			levels[i]=level;
+			nodes[i]=node;
+			ties[i]=tie;
+		}
+		void pop(){
+			--size;
+			double distance=distances[size];
+			int level=levels[size], node=nodes[size], tie=ties[size];
+			int i=0;
+			while(true){
+				int child=2*i+1;
+				if(child>=size){
+					break;
+				}
+				if(child+1<size&&before(distances[child+1],levels[child+1],ties[child+1],child)){
+					++child;
+				}
+				if(!before(distances[child],levels[child],ties[child],distance,level,tie)){
+					break;
+				}
+				move(child,i);
+				i=child;
+			}
+			distances[i]=distance;
+			levels[i]=level;
+			nodes[i]=node;
+			ties[i]=tie;
+		}
+		private boolean before(double distance,int level,int tie,int j){
+			return before(distance,level,tie,distances[j],levels[j],ties[j]);
+		}
+		private static boolean before(double distance,int level,int tie,double distance2,int level2,int tie2){
+			if(distance!=distance2){
+				return distance<distance2;
+			}else if((level==0)!=(level2==0)){
+				return level!=0;
+			}else{
+				return tie<tie2;
+			}
+		}
+		private void move(int from,int to){
+			distances[to]=distances[from];
+			levels[to]=levels[from];
+			nodes[to]=nodes[from];
+			ties[to]=ties[from];
+		}
+		boolean isEmpty(){
+			return size==0;
+		}
+		int peekLevel(){
+			return levels[0];
+		}
+		int peekNode(){
+			return nodes[0];
+		}
+	}
+}
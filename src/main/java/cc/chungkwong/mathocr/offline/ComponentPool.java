@@ -17,13 +17,21 @@
 package cc.chungkwong.mathocr.offline;
 import cc.chungkwong.mathocr.*;
 import cc.chungkwong.mathocr.common.*;
+import cc.chungkwong.mathocr.offline.preprocessor.*;
 import java.awt.image.*;
 import java.util.*;
+import java.util.concurrent.*;
 /**
- * A data structure that store connected components
+ * A data structure that store connected components. Components found by
+ * connected component analysis are in the order of their first pixels in
+ * raster order.
  */
 public class ComponentPool{
-	private final ArrayList<ConnectedComponent> components=new ArrayList<>();
+	private static final int MIN_STRIP_HEIGHT=64;
+	private static final int MIN_BATCH_SIZE=256;
+	private final ComponentList components=new ComponentList();
+	private ComponentIndex index;
+	private int indexVersion;
 	/**
 	 * Construct a ComponentPool by connected component analysis
 	 *
@@ -34,16 +42,85 @@ public class ComponentPool{
 	public ComponentPool(byte[] pixels,int width,int height){
 		connectedComponentAnalysis(pixels,width,height);
 	}
+	/**
+	 * Construct a ComponentPool by connected component analysis on horizontal
+	 * strips in parallel. The result is the same as the sequential one.
+	 *
+	 * @param pixels the input image
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param pool the pool to be used, null for sequential processing
+	 */
+	public ComponentPool(byte[] pixels,int width,int height,ForkJoinPool pool){
+		if(pool==null){
+			connectedComponentAnalysis(pixels,width,height);
+		}else{
+			connectedComponentAnalysis(new BinaryView(pixels,width,height)::getRuns,width,height,pool);
+		}
+	}
 	/**
 	 * Construct a ComponentPool by connected component analysis
 	 *
 	 * @param image the input image
 	 */
 	public ComponentPool(java.awt.image.BufferedImage image){
-		int width=image.getWidth(), height=image.getHeight();
-		byte[] pixels=new byte[height*width];
-		WritableRaster raster=WritableRaster.createBandedRaster(DataBuffer.TYPE_BYTE,width,height,1,null);
-		connectedComponentAnalysis(((DataBufferByte)image.copyData(raster).getDataBuffer()).getData(),width,height);
+		BinaryView view=BinaryView.of(image);
+		if(view!=null){
+			connectedComponentAnalysis(view,null);
+		}else{
+			int width=image.getWidth(), height=image.getHeight();
+			WritableRaster raster=WritableRaster.createBandedRaster(DataBuffer.TYPE_BYTE,width,height,1,null);
+			connectedComponentAnalysis(((DataBufferByte)image.copyData(raster).getDataBuffer()).getData(),width,height);
+		}
+	}
+	/**
+	 * Construct a ComponentPool by connected component analysis
+	 *
+	 * @param view the input image
+	 */
+	public ComponentPool(BinaryView view){
+		this(view,null);
+	}
+	/**
+	 * Construct a ComponentPool by connected component analysis on horizontal
+	 * strips in parallel. The result is the same as the sequential one.
+	 *
+	 * @param view the input image
+	 * @param pool the pool to be used, null for sequential processing
+	 */
+	public ComponentPool(BinaryView view,ForkJoinPool pool){
+		connectedComponentAnalysis(view,pool);
+	}
+	/**
+	 * Construct a ComponentPool by connected component analysis, blank area
+	 * are skipped word by word. The result is the same as the one from the
+	 * unpacked image.
+	 *
+	 * @param bitmap the input image
+	 */
+	public ComponentPool(PackedBitmap bitmap){
+		this(bitmap,null);
+	}
+	/**
+	 * Construct a ComponentPool by connected component analysis on horizontal
+	 * strips in parallel. The result is the same as the sequential one.
+	 *
+	 * @param bitmap the input image
+	 * @param pool the pool to be used, null for sequential processing
+	 */
+	public ComponentPool(PackedBitmap bitmap,ForkJoinPool pool){
+		connectedComponentAnalysis(bitmap::getRuns,bitmap.getWidth(),bitmap.getHeight(),pool);
+	}
+	/**
+	 * Construct a ComponentPool from components found before, for example
+	 * ones loaded from a ComponentArchive
+	 *
+	 * @param components the components
+	 */
+	public ComponentPool(Collection<ConnectedComponent> components){
+		this.components.addAll(components);
+	}
+	private ComponentPool(){
 	}
 	/**
 	 * Perform connected component analysis
@@ -54,11 +131,8 @@ public class ComponentPool{
 	 */
 	private void connectedComponentAnalysis(byte[] pixels,int width,int height){
 		int curr=0;
-		//Integer tmp;
-		Partition partition=new Partition((int m,int n)->{
-			components.get(n).combineWith(components.get(m));
-			components.set(m,null);
-		});
+		Partition partition=new Partition();
+		LabelledRuns labelled=new LabelledRuns();
 		int[] last=new int[width];
 		int lastlt=-1;
 		for(int j=0;j<width;j++){
@@ -86,13 +160,12 @@ public class ComponentPool{
 						}
 					}
 					if(id==-1){
-						components.add(new ConnectedComponent(new RunLength(i,j,k-j-1)));
 						partition.makeSet();
 						id=curr++;
 					}else{
 						id=partition.findRoot(id);
-						components.get(id).addRunLengthToLast(new RunLength(i,j,k-j-1));
 					}
+					labelled.add(i,j,k-j-1,id);
 					for(int l=j;l<k;l++){
 						last[l]=id;
 					}
@@ -104,19 +177,262 @@ public class ComponentPool{
 				}
 			}
 		}
-		trim(components);
+		labelled.collect(partition,components);
 		filterNoise();
 	}
 	/**
-	 * Delete null element from a list
+	 * Perform connected component analysis
 	 *
-	 * @param components the list of ConnectedComponent
+	 * @param view the image
+	 * @param pool the pool to be used, null for sequential processing
 	 */
-	private static void trim(List<ConnectedComponent> components){
-		ListIterator<ConnectedComponent> iter=components.listIterator();
-		while(iter.hasNext()){
-			if(iter.next()==null){
-				iter.remove();
+	private void connectedComponentAnalysis(BinaryView view,ForkJoinPool pool){
+		if(pool==null&&view.isCompact()){
+			connectedComponentAnalysis(view.getData(),view.getWidth(),view.getHeight());
+		}else{
+			connectedComponentAnalysis(view::getRuns,view.getWidth(),view.getHeight(),pool);
+		}
+	}
+	/**
+	 * Source of runs of black pixels in rows
+	 */
+	private interface RunSource{
+		/**
+		 * Get the runs in a row
+		 *
+		 * @param row the index of the row
+		 * @param runs to be filled with start and end(exclusive) of the runs
+		 * @return the number of runs
+		 */
+		int getRuns(int row,int[] runs);
+	}
+	/**
+	 * Perform connected component analysis run by run. With a pool, strips of
+	 * the image are labelled independently and then the labels are merged
+	 * along the boundaries of the strips.
+	 *
+	 * @param source the runs of the image
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param pool the pool to be used, null for sequential processing
+	 */
+	private void connectedComponentAnalysis(RunSource source,int width,int height,ForkJoinPool pool){
+		int[] bounds=Strips.split(pool,height,MIN_STRIP_HEIGHT);
+		Labeller[] strips=new Labeller[bounds.length-1];
+		Strips.forEach(pool,bounds,(index,start,end)->{
+			Labeller labeller=new Labeller(this,width);
+			int[] runs=new int[width+1];
+			for(int i=start;i<end;i++){
+				labeller.acceptRuns(i,runs,source.getRuns(i,runs));
+			}
+			strips[index]=labeller;
+		});
+		if(strips.length==1){
+			strips[0].finish();
+		}else{
+			Labeller.merge(strips,components);
+			filterNoise();
+		}
+	}
+	/**
+	 * Connected component analysis on rows given from top to bottom, so that
+	 * the image need not to be kept in memory. The result is the same as the
+	 * one from the whole image.
+	 */
+	public static class Labeller implements RowSink{
+		private final ComponentPool pool;
+		private final Partition partition=new Partition();
+		private final LabelledRuns labelled=new LabelledRuns();
+		private final int width;
+		private int[] runs, lastRuns, ids, lastIds, firstRuns, firstIds;
+		private int lastCount=0, curr=0;
+		/**
+		 * Create a labeller
+		 *
+		 * @param width the width of the image
+		 */
+		public Labeller(int width){
+			this(new ComponentPool(),width);
+		}
+		private Labeller(ComponentPool pool,int width){
+			this.pool=pool;
+			this.width=width;
+			this.runs=new int[width+1];
+			this.lastRuns=new int[width+1];
+			this.ids=new int[width/2+1];
+			this.lastIds=new int[width/2+1];
+		}
+		/**
+		 * Accept a row of pixels
+		 *
+		 * @param row the index of the row
+		 * @param buf the pixels of the row, black pixels are marked 0
+		 */
+		@Override
+		public void accept(int row,byte[] buf){
+			int count=0;
+			for(int j=0;j<width;j++){
+				if(buf[j]==0){
+					int k=j+1;
+					while(k<width&&buf[k]==0){
+						++k;
+					}
+					runs[count*2]=j;
+					runs[count*2+1]=k;
+					++count;
+					j=k;
+				}
+			}
+			acceptRuns(row,runs,count);
+		}
+		/**
+		 * Accept a row as runs of black pixels
+		 *
+		 * @param i the index of the row
+		 * @param rowRuns start and end(exclusive) of the runs in increasing
+		 * order
+		 * @param count the number of runs
+		 */
+		public void acceptRuns(int i,int[] rowRuns,int count){
+			for(int r=0, p=0;r<count;r++){
+				int j=rowRuns[r*2], k=rowRuns[r*2+1];
+				int id=-1;
+				while(p<lastCount&&lastRuns[p*2+1]<j){
+					++p;
+				}
+				for(int q=p;q<lastCount&&lastRuns[q*2]<=k;q++){
+					if(id==-1){
+						id=lastIds[q];
+					}else{
+						partition.union(id,lastIds[q]);
+					}
+				}
+				if(id==-1){
+					partition.makeSet();
+					id=curr++;
+				}else{
+					id=partition.findRoot(id);
+				}
+				labelled.add(i,j,k-j-1,id);
+				ids[r]=id;
+			}
+			if(firstRuns==null){
+				firstRuns=Arrays.copyOf(rowRuns,count*2);
+				firstIds=Arrays.copyOf(ids,count);
+			}
+			if(rowRuns!=runs){
+				System.arraycopy(rowRuns,0,runs,0,count*2);
+			}
+			int[] tmp=runs;
+			runs=lastRuns;
+			lastRuns=tmp;
+			tmp=ids;
+			ids=lastIds;
+			lastIds=tmp;
+			lastCount=count;
+		}
+		/**
+		 * Complete the analysis
+		 *
+		 * @return the components found
+		 */
+		public ComponentPool finish(){
+			labelled.collect(partition,pool.components);
+			pool.filterNoise();
+			return pool;
+		}
+		/**
+		 * Merge the labels of consecutive strips
+		 *
+		 * @param strips labellers of the strips from top to bottom
+		 * @param components the list to add the components to
+		 */
+		private static void merge(Labeller[] strips,List<ConnectedComponent> components){
+			Partition partition=new Partition();
+			int[] offsets=new int[strips.length];
+			for(int s=0;s<strips.length;s++){
+				Partition local=strips[s].partition;
+				int offset=partition.size();
+				offsets[s]=offset;
+				for(int l=0;l<local.size();l++){
+					partition.makeSet();
+				}
+				for(int l=0;l<local.size();l++){
+					if(!local.isRoot(l)){
+						partition.union(offset+l,offset+local.findRoot(l));
+					}
+				}
+				if(s>0){
+					Labeller upper=strips[s-1], lower=strips[s];
+					int[] lastRuns=upper.lastRuns, lastIds=upper.lastIds, firstRuns=lower.firstRuns, firstIds=lower.firstIds;
+					for(int r=0, p=0;r<lower.firstIds.length;r++){
+						int j=firstRuns[r*2], k=firstRuns[r*2+1];
+						while(p<upper.lastCount&&lastRuns[p*2+1]<j){
+							++p;
+						}
+						for(int q=p;q<upper.lastCount&&lastRuns[q*2]<=k;q++){
+							partition.union(offset+firstIds[r],offsets[s-1]+lastIds[q]);
+						}
+					}
+				}
+			}
+			int[] indices=partition.getSetIndices();
+			ConnectedComponent[] sets=new ConnectedComponent[partition.getSetCount()];
+			for(int i=0;i<sets.length;i++){
+				sets[i]=new ConnectedComponent();
+			}
+			for(int s=0;s<strips.length;s++){
+				strips[s].labelled.collect(indices,offsets[s],sets);
+			}
+			components.addAll(Arrays.asList(sets));
+		}
+	}
+	/**
+	 * Runs in raster order with their labels. Components are built only after
+	 * all equivalences of labels are known, so that each run is copied once
+	 * instead of being moved on every union.
+	 */
+	private static final class LabelledRuns{
+		private int[] ys=new int[256], xs=new int[256], counts=new int[256], labels=new int[256];
+		private int size=0;
+		void add(int y,int x,int count,int label){
+			if(size==ys.length){
+				ys=Arrays.copyOf(ys,size*2);
+				xs=Arrays.copyOf(xs,size*2);
+				counts=Arrays.copyOf(counts,size*2);
+				labels=Arrays.copyOf(labels,size*2);
+			}
+			ys[size]=y;
+			xs[size]=x;
+			counts[size]=count;
+			labels[size]=label;
+			++size;
+		}
+		/**
+		 * Build the components, in the order of their first runs
+		 *
+		 * @param partition the equivalences of labels
+		 * @param components the list to add the components to
+		 */
+		void collect(Partition partition,List<ConnectedComponent> components){
+			int[] indices=partition.getSetIndices();
+			ConnectedComponent[] sets=new ConnectedComponent[partition.getSetCount()];
+			for(int i=0;i<sets.length;i++){
+				sets[i]=new ConnectedComponent();
+			}
+			collect(indices,0,sets);
+			components.addAll(Arrays.asList(sets));
+		}
+		/**
+		 * Append the runs to the components containing them
+		 *
+		 * @param indices the indices of the components containing each label
+		 * @param offset to be added to the labels
+		 * @param sets the components
+		 */
+		void collect(int[] indices,int offset,ConnectedComponent[] sets){
+			for(int r=0;r<size;r++){
+				sets[indices[labels[r]+offset]].addRunLengthToLast(ys[r],xs[r],counts[r]);
 			}
 		}
 	}
@@ -130,6 +446,9 @@ public class ComponentPool{
 	 * @return the number
 	 */
 	public int countConnectedComponent(int left,int right,int top,int bottom){
+		if(index!=null&&indexVersion==components.getVersion()){
+			return index.count(left,right,top,bottom);
+		}
 		int c=0;
 		for(ConnectedComponent ele:components){
 			if(ele.getLeft()<=right&&left<=ele.getRight()&&top<=ele.getBottom()&&ele.getTop()<=bottom){
@@ -146,6 +465,26 @@ public class ComponentPool{
 	public ArrayList<ConnectedComponent> getComponents(){
 		return components;
 	}
+	/**
+	 * Get a spatial index over the components, it is built on first request
+	 * and rebuilt after the list of components is changed. Call
+	 * invalidateIndex after moving components in place.
+	 *
+	 * @return the index
+	 */
+	public ComponentIndex getIndex(){
+		if(index==null||indexVersion!=components.getVersion()){
+			index=new ComponentIndex(components);
+			indexVersion=components.getVersion();
+		}
+		return index;
+	}
+	/**
+	 * Discard the spatial index, so that it will be rebuilt when needed
+	 */
+	public void invalidateIndex(){
+		index=null;
+	}
 	/**
 	 * Get average height of the connected components
 	 *
@@ -172,8 +511,8 @@ public class ComponentPool{
 	}
 	public void filterNoise(){
 		int threhold=Settings.DEFAULT.getInteger("NOISE_THREHOLD");
-		if(threhold>0){
-			components.removeIf((c)->c.getWidth()<=threhold&&c.getHeight()<=threhold);
+		if(threhold>0&&components.removeIf((c)->c.getWidth()<=threhold&&c.getHeight()<=threhold)){
+			index=null;
 		}
 	}
 	/**
@@ -189,6 +528,7 @@ public class ComponentPool{
 			int h=ele.getHeight(), w=ele.getWidth();
 			if(h*w<=2||(h/w>20&&h>height/3)){
 				iter.remove();
+				index=null;
 			}
 		}
 		/*int max=Math.max(width,height);
@@ -211,8 +551,82 @@ public class ComponentPool{
 			ConnectedComponent ele=iter.next();
 			if(ele.getLeft()==0||ele.getTop()==0||ele.getRight()==width-1||ele.getBottom()==height-1){
 				iter.remove();
+				index=null;
+			}
+		}
+	}
+	/**
+	 * Merge groups of components, each group is replaced by the combination
+	 * of its members at the position of its first member
+	 *
+	 * @param groupIds the group of each component, negative for components
+	 * not to be merged
+	 */
+	public void mergeGroups(int[] groupIds){
+		int n=components.size();
+		if(groupIds.length!=n){
+			throw new IllegalArgumentException("One group id is needed for each component");
+		}
+		long[] keys=new long[n];
+		int count=0;
+		for(int i=0;i<n;i++){
+			if(groupIds[i]>=0){
+				keys[count++]=((long)groupIds[i]<<32)|i;
+			}
+		}
+		Arrays.sort(keys,0,count);
+		ConnectedComponent[] merged=new ConnectedComponent[n];
+		boolean[] removed=new boolean[n];
+		List<ConnectedComponent> members=new ArrayList<>();
+		for(int i=0;i<count;){
+			int group=(int)(keys[i]>>>32), first=(int)keys[i];
+			members.clear();
+			for(;i<count&&(int)(keys[i]>>>32)==group;i++){
+				int member=(int)keys[i];
+				members.add(components.get(member));
+				removed[member]=true;
+			}
+			merged[first]=members.size()==1?members.get(0):ConnectedComponent.combine(members);
+			removed[first]=false;
+		}
+		int k=0;
+		for(int i=0;i<n;i++){
+			if(!removed[i]){
+				components.set(k++,merged[i]!=null?merged[i]:components.get(i));
 			}
 		}
+		components.subList(k,n).clear();
+		index=null;
+	}
+	/**
+	 * Compute the shape features of all the components in parallel, the
+	 * features are also cached by the components
+	 *
+	 * @param pool the pool to be used, null for sequential processing
+	 * @return the features of each component
+	 */
+	public ShapeFeatures[] getShapeFeatures(ForkJoinPool pool){
+		ShapeFeatures[] features=new ShapeFeatures[components.size()];
+		Strips.forEach(pool,Strips.split(pool,features.length,MIN_BATCH_SIZE),(index,start,end)->{
+			for(int i=start;i<end;i++){
+				features[i]=components.get(i).getShapeFeatures();
+			}
+		});
+		return features;
+	}
+	/**
+	 * Count holes in all the components in parallel
+	 *
+	 * @param pool the pool to be used, null for sequential processing
+	 * @return the number of holes in each component
+	 */
+	public int[] getNumberOfHoles(ForkJoinPool pool){
+		ShapeFeatures[] features=getShapeFeatures(pool);
+		int[] holes=new int[features.length];
+		for(int i=0;i<features.length;i++){
+			holes[i]=features[i].getNumberOfHoles();
+		}
+		return holes;
 	}
 	public BoundBox getBoundBox(){
 		int xmin=Integer.MAX_VALUE, ymin=Integer.MAX_VALUE, xmax=0, ymax=0;
@@ -232,4 +646,24 @@ public class ComponentPool{
 		}
 		return new BoundBox(xmin,xmax,ymin,ymax);
 	}
+	/**
+	 * List of components that counts changes, so that a stale index is never
+	 * used
+	 */
+	private static final class ComponentList extends ArrayList<ConnectedComponent>{
+		private static final long serialVersionUID=1L;
+		private int replaced;
+		@Override
+		public ConnectedComponent set(int index,ConnectedComponent element){
+			++replaced;
+			return super.set(index,element);
+		}
+		/**
+		 * @return a number changed whenever elements are added, removed,
+		 * reordered or replaced
+		 */
+		int getVersion(){
+			return modCount+replaced;
+		}
+	}
 }
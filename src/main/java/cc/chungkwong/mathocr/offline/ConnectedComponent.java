@@ -26,8 +26,15 @@ public final class ConnectedComponent implements Externalizable,Comparable<Conne
 	private static final long serialVersionUID=1L;
 	public static final Comparator<ConnectedComponent> FROM_LEFT=Comparator.<ConnectedComponent>comparingInt((c)->c.cordLeft).
 			thenComparingInt((c)->c.cordTop).thenComparingInt((c)->c.cordRight);
+	/**
+	 * Inclusive bounds of the component, they should be changed by setBounds
+	 * so that cached features are dropped
+	 */
 	public int cordTop=Integer.MAX_VALUE, cordLeft=Integer.MAX_VALUE, cordBottom=0, cordRight=0;
-	private final List<RunLength> runlengths=new LinkedList<>();
+	private static final int INITIAL_CAPACITY=4;
+	private int[] ys=new int[INITIAL_CAPACITY], xs=new int[INITIAL_CAPACITY], counts=new int[INITIAL_CAPACITY];
+	private int size;
+	private ShapeFeatures features;
 	/**
 	 * Construct a empty ConnectedComponent
 	 */
@@ -49,12 +56,12 @@ public final class ConnectedComponent implements Externalizable,Comparable<Conne
 						blackStart=j;
 					}
 				}else if(blackStart!=-1){
-					addRunLengthToLast(new RunLength(i,blackStart,j-blackStart-1));
+					addRunLengthToLast(i,blackStart,j-blackStart-1);
 					blackStart=-1;
 				}
 			}
 			if(blackStart!=-1){
-				addRunLengthToLast(new RunLength(i,blackStart,width-blackStart-1));
+				addRunLengthToLast(i,blackStart,width-blackStart-1);
 			}
 		}
 	}
@@ -92,32 +99,51 @@ public final class ConnectedComponent implements Externalizable,Comparable<Conne
 	public ConnectedComponent(RunLength runlength){
 		addRunLength(runlength);
 	}
+	/**
+	 * Construct a ConnectedComponent with a single RunLength
+	 *
+	 * @param y the y coordinate
+	 * @param x the x coordinate
+	 * @param count the length of the RunLength - 1
+	 */
+	public ConnectedComponent(int y,int x,int count){
+		addRunLengthToLast(y,x,count);
+	}
 	/**
 	 * Add a RunLength
 	 *
 	 * @param runlength the RunLength to be added
 	 */
 	public void addRunLength(RunLength runlength){
-		ListIterator<RunLength> iter=runlengths.listIterator();
-		while(iter.hasNext()){
-			if(iter.next().compareTo(runlength)>0){
-				iter.previous();
-				break;
+		addRunLength(runlength.getY(),runlength.getX(),runlength.getCount());
+	}
+	/**
+	 * Add a RunLength
+	 *
+	 * @param y the y coordinate
+	 * @param x the x coordinate
+	 * @param count the length of the RunLength - 1
+	 */
+	public void addRunLength(int y,int x,int count){
+		int lo=0, hi=size;
+		while(lo<hi){
+			int mid=(lo+hi)>>>1;
+			if(ys[mid]<y||(ys[mid]==y&&xs[mid]<=x)){
+				lo=mid+1;
+			}else{
+				hi=mid;
 			}
 		}
-		iter.add(runlength);
-		if(runlength.getY()<cordTop){
-			cordTop=runlength.getY();
-		}
-		if(runlength.getX()<cordLeft){
-			cordLeft=runlength.getX();
-		}
-		if(runlength.getY()>cordBottom){
-			cordBottom=runlength.getY();
-		}
-		if(runlength.getX()+runlength.getCount()>cordRight){
-			cordRight=runlength.getX()+runlength.getCount();
-		}
+		ensureCapacity(size+1);
+		System.arraycopy(ys,lo,ys,lo+1,size-lo);
+		System.arraycopy(xs,lo,xs,lo+1,size-lo);
+		System.arraycopy(counts,lo,counts,lo+1,size-lo);
+		ys[lo]=y;
+		xs[lo]=x;
+		counts[lo]=count;
+		++size;
+		updateBounds(y,x,count);
+		features=null;
 	}
 	/**
 	 * Add a RunLength provided that it is greater than all the RunLength
@@ -127,27 +153,103 @@ public final class ConnectedComponent implements Externalizable,Comparable<Conne
 	 * @param runlength the RunLength to be added
 	 */
 	public void addRunLengthToLast(RunLength runlength){
-		runlengths.add(runlength);
-		if(runlength.getY()<cordTop){
-			cordTop=runlength.getY();
+		addRunLengthToLast(runlength.getY(),runlength.getX(),runlength.getCount());
+	}
+	/**
+	 * Add a RunLength provided that it is greater than all the RunLength
+	 * already in the ConnectedComponent, no object is created
+	 *
+	 * @param y the y coordinate
+	 * @param x the x coordinate
+	 * @param count the length of the RunLength - 1
+	 */
+	public void addRunLengthToLast(int y,int x,int count){
+		append(y,x,count);
+		updateBounds(y,x,count);
+	}
+	private void append(int y,int x,int count){
+		if(size==ys.length){
+			ensureCapacity(size+1);
+		}
+		ys[size]=y;
+		xs[size]=x;
+		counts[size]=count;
+		++size;
+		features=null;
+	}
+	private void ensureCapacity(int capacity){
+		if(capacity>ys.length){
+			int newCapacity=Math.max(capacity,ys.length*2);
+			ys=Arrays.copyOf(ys,newCapacity);
+			xs=Arrays.copyOf(xs,newCapacity);
+			counts=Arrays.copyOf(counts,newCapacity);
 		}
-		if(runlength.getX()<cordLeft){
-			cordLeft=runlength.getX();
+	}
+	private void updateBounds(int y,int x,int count){
+		if(y<cordTop){
+			cordTop=y;
+		}
+		if(x<cordLeft){
+			cordLeft=x;
 		}
-		if(runlength.getY()>cordBottom){
-			cordBottom=runlength.getY();
+		if(y>cordBottom){
+			cordBottom=y;
 		}
-		if(runlength.getX()+runlength.getCount()>cordRight){
-			cordRight=runlength.getX()+runlength.getCount();
+		if(x+count>cordRight){
+			cordRight=x+count;
 		}
 	}
 	/**
-	 * Get the runlengths in the component
+	 * Get the runlengths in the component, the list is a read-only view
+	 * creating a RunLength on each access, so changes to the RunLength are not
+	 * reflected in the component. Use getRunLengthCount, getRunY, getRunX and
+	 * getRunCount to avoid creating objects.
 	 *
 	 * @return the runlengths
 	 */
 	public List<RunLength> getRunLengths(){
-		return runlengths;
+		return new RunLengthList();
+	}
+	private final class RunLengthList extends AbstractList<RunLength> implements RandomAccess{
+		@Override
+		public RunLength get(int index){
+			if(index<0||index>=size){
+				throw new IndexOutOfBoundsException();
+			}
+			return new RunLength(ys[index],xs[index],counts[index]);
+		}
+		@Override
+		public int size(){
+			return size;
+		}
+	}
+	/**
+	 *
+	 * @return number of RunLength in the component
+	 */
+	public int getRunLengthCount(){
+		return size;
+	}
+	/**
+	 * @param index index of a RunLength in increasing order
+	 * @return the y coordinate of the RunLength
+	 */
+	public int getRunY(int index){
+		return ys[index];
+	}
+	/**
+	 * @param index index of a RunLength in increasing order
+	 * @return the x coordinate of the RunLength
+	 */
+	public int getRunX(int index){
+		return xs[index];
+	}
+	/**
+	 * @param index index of a RunLength in increasing order
+	 * @return the length - 1 of the RunLength
+	 */
+	public int getRunCount(int index){
+		return counts[index];
 	}
 	/**
 	 * Merge this component with c
@@ -155,23 +257,25 @@ public final class ConnectedComponent implements Externalizable,Comparable<Conne
 	 * @param c the component to merge
 	 */
 	public void combineWith(ConnectedComponent c){
-		ListIterator<RunLength> iter=runlengths.listIterator(), iterc=c.runlengths.listIterator();
-		RunLength currc=iterc.hasNext()?iterc.next():null;
-		while(currc!=null){
-			if(iter.hasNext()){
-				if(iter.next().compareTo(currc)>0){
-					iter.previous();
-					iter.add(currc);
-					currc=iterc.hasNext()?iterc.next():null;
-				}
+		int i=size-1, j=c.size-1, k=size+c.size-1;
+		ensureCapacity(size+c.size);
+		//merge from the end, runs of c are put after equal runs of this
+		while(j>=0){
+			if(i>=0&&(ys[i]>c.ys[j]||(ys[i]==c.ys[j]&&xs[i]>c.xs[j]))){
+				ys[k]=ys[i];
+				xs[k]=xs[i];
+				counts[k]=counts[i];
+				--i;
 			}else{
-				iter.add(currc);
-				while(iterc.hasNext()){
-					iter.add(iterc.next());
-				}
-				break;
+				ys[k]=c.ys[j];
+				xs[k]=c.xs[j];
+				counts[k]=c.counts[j];
+				--j;
 			}
+			--k;
 		}
+		size+=c.size;
+		features=null;
 		if(c.cordTop<cordTop){
 			cordTop=c.cordTop;
 		}
@@ -192,26 +296,11 @@ public final class ConnectedComponent implements Externalizable,Comparable<Conne
 	 * @return combination result
 	 */
 	public static ConnectedComponent combine(List<ConnectedComponent> c){
-		//can be improved using binary merge
 		ConnectedComponent ele=new ConnectedComponent();
-		for(ConnectedComponent g:c){
-			ListIterator<RunLength> iter=ele.runlengths.listIterator(), iterc=g.runlengths.listIterator();
-			RunLength currc=iterc.hasNext()?iterc.next():null;
-			while(currc!=null){
-				if(iter.hasNext()){
-					if(iter.next().compareTo(currc)>0){
-						iter.previous();
-						iter.add(currc);
-						currc=iterc.hasNext()?iterc.next():null;
-					}
-				}else{
-					iter.add(currc);
-					while(iterc.hasNext()){
-						iter.add(iterc.next());
-					}
-					break;
-				}
-			}
+		ConnectedComponent[] sources=c.toArray(new ConnectedComponent[c.size()]);
+		int total=0;
+		for(ConnectedComponent g:sources){
+			total+=g.size;
 			if(g.cordTop<ele.cordTop){
 				ele.cordTop=g.cordTop;
 			}
@@ -225,8 +314,63 @@ public final class ConnectedComponent implements Externalizable,Comparable<Conne
 				ele.cordRight=g.cordRight;
 			}
 		}
+		ele.ensureCapacity(total);
+		//k-way merge with a heap of sources, ties are broken by the order of sources
+		int[] heap=new int[sources.length], positions=new int[sources.length];
+		int heapSize=0;
+		for(int i=0;i<sources.length;i++){
+			if(sources[i].size>0){
+				heap[heapSize++]=i;
+			}
+		}
+		for(int i=heapSize/2-1;i>=0;i--){
+			siftDown(heap,i,heapSize,sources,positions);
+		}
+		int[] ys=ele.ys, xs=ele.xs, counts=ele.counts;
+		for(int k=0;heapSize>0;k++){
+			int s=heap[0];
+			ConnectedComponent g=sources[s];
+			int p=positions[s]++;
+			ys[k]=g.ys[p];
+			xs[k]=g.xs[p];
+			counts[k]=g.counts[p];
+			if(p+1==g.size){
+				heap[0]=heap[--heapSize];
+			}
+			siftDown(heap,0,heapSize,sources,positions);
+		}
+		ele.size=total;
 		return ele;
 	}
+	private static void siftDown(int[] heap,int i,int heapSize,ConnectedComponent[] sources,int[] positions){
+		int s=heap[i];
+		while(true){
+			int child=2*i+1;
+			if(child>=heapSize){
+				break;
+			}
+			if(child+1<heapSize&&isBefore(heap[child+1],heap[child],sources,positions)){
+				++child;
+			}
+			if(!isBefore(heap[child],s,sources,positions)){
+				break;
+			}
+			heap[i]=heap[child];
+			i=child;
+		}
+		heap[i]=s;
+	}
+	private static boolean isBefore(int s,int t,ConnectedComponent[] sources,int[] positions){
+		ConnectedComponent g=sources[s], h=sources[t];
+		int p=positions[s], q=positions[t];
+		if(g.ys[p]!=h.ys[q]){
+			return g.ys[p]<h.ys[q];
+		}else if(g.xs[p]!=h.xs[q]){
+			return g.xs[p]<h.xs[q];
+		}else{
+			return s<t;
+		}
+	}
 	/**
 	 * Split this component horizontally
 	 *
@@ -235,28 +379,33 @@ public final class ConnectedComponent implements Externalizable,Comparable<Conne
 	 */
 	public ConnectedComponent splitHorizontally(int x){
 		ConnectedComponent ele=new ConnectedComponent();
-		Iterator<RunLength> iter=runlengths.iterator();
 		cordTop=Integer.MAX_VALUE;
 		cordBottom=0;
-		while(iter.hasNext()){
-			RunLength length=iter.next();
-			if(length.getX()>x){
-				ele.addRunLengthToLast(length);
-				iter.remove();
+		int kept=0;
+		for(int i=0;i<size;i++){
+			int y=ys[i], start=xs[i], count=counts[i];
+			if(start>x){
+				ele.addRunLengthToLast(y,start,count);
 			}else{
-				if(length.getX()+length.getCount()>x){
-					ele.addRunLengthToLast(new RunLength(length.getY(),x+1,length.getX()+length.getCount()-x-1));
-					length.reset(length.getY(),length.getX(),x-length.getX());
+				if(start+count>x){
+					ele.addRunLengthToLast(y,x+1,start+count-x-1);
+					count=x-start;
 				}
-				if(length.getY()<cordTop){
-					cordTop=length.getY();
+				ys[kept]=y;
+				xs[kept]=start;
+				counts[kept]=count;
+				++kept;
+				if(y<cordTop){
+					cordTop=y;
 				}
-				if(length.getY()>cordBottom){
-					cordBottom=length.getY();
+				if(y>cordBottom){
+					cordBottom=y;
 				}
 			}
 		}
+		size=kept;
 		cordRight=x;
+		features=null;
 		return ele;
 	}
 	/**
@@ -267,24 +416,28 @@ public final class ConnectedComponent implements Externalizable,Comparable<Conne
 	 */
 	public ConnectedComponent splitVertically(int y){
 		ConnectedComponent ele=new ConnectedComponent();
-		Iterator<RunLength> iter=runlengths.iterator();
 		cordLeft=Integer.MAX_VALUE;
 		cordRight=0;
-		while(iter.hasNext()){
-			RunLength length=iter.next();
-			if(length.getY()>y){
-				ele.addRunLengthToLast(length);
-				iter.remove();
+		int kept=0;
+		for(int i=0;i<size;i++){
+			if(ys[i]>y){
+				ele.addRunLengthToLast(ys[i],xs[i],counts[i]);
 			}else{
-				if(length.getX()<cordLeft){
-					cordLeft=length.getX();
+				if(xs[i]<cordLeft){
+					cordLeft=xs[i];
 				}
-				if(length.getX()+length.getCount()>cordRight){
-					cordRight=length.getX()+length.getCount();
+				if(xs[i]+counts[i]>cordRight){
+					cordRight=xs[i]+counts[i];
 				}
+				ys[kept]=ys[i];
+				xs[kept]=xs[i];
+				counts[kept]=counts[i];
+				++kept;
 			}
 		}
+		size=kept;
 		cordBottom=y;
+		features=null;
 		return ele;
 	}
 	/**
@@ -335,17 +488,27 @@ public final class ConnectedComponent implements Externalizable,Comparable<Conne
 	public int getHeight(){
 		return cordBottom>=cordTop?cordBottom-cordTop+1:0;
 	}
+	/**
+	 * Get the shape features of the component, they are computed once and
+	 * cached until the run lengths are changed
+	 *
+	 * @return the features
+	 */
+	public ShapeFeatures getShapeFeatures(){
+		ShapeFeatures cached=features;
+		if(cached==null){
+			cached=new ShapeFeatures(this);
+			features=cached;
+		}
+		return cached;
+	}
 	/**
 	 * Compute horizontal crossing numbers
 	 *
 	 * @return horizontal crossing numbers
 	 */
 	public byte[] getHorizontalCrossing(){
-		byte[] cross=new byte[getHeight()];
-		for(RunLength rl:runlengths){
-			++cross[rl.getY()-cordTop];
-		}
-		return cross;
+		return getShapeFeatures().getHorizontalCrossing();
 	}
 	/**
 	 * Compute vertical crossing numbers
@@ -353,24 +516,7 @@ public final class ConnectedComponent implements Externalizable,Comparable<Conne
 	 * @return vertical crossing numbers
 	 */
 	public byte[] getVerticalCrossing(){
-		byte[] cross=new byte[getWidth()], prev=new byte[getWidth()];
-		Iterator<RunLength> iter=runlengths.iterator();
-		RunLength curr=iter.hasNext()?iter.next():null;
-		for(int i=cordTop;i<=cordBottom;i++){
-			while(curr!=null&&curr.getY()==i){
-				for(int j=0, k=curr.getX()-cordLeft;j<=curr.getCount();j++,k++){
-					if(prev[k]==0){
-						++cross[k];
-					}
-					prev[k]=-1;
-				}
-				curr=iter.hasNext()?iter.next():null;
-			}
-			for(int k=0;k<prev.length;k++){
-				prev[k]=(byte)(prev[k]==-1?1:0);
-			}
-		}
-		return cross;
+		return getShapeFeatures().getVerticalCrossing();
 	}
 	/**
 	 * Compute power
@@ -394,11 +540,14 @@ public final class ConnectedComponent implements Externalizable,Comparable<Conne
 	 * @return the moment
 	 */
 	public double getMoment(int p,int q){
+		if(p+q<=ShapeFeatures.MAX_ORDER){
+			return getShapeFeatures().getMoment(p,q);
+		}
 		double moment=0;
 		int count=0;
-		for(RunLength rl:runlengths){
-			int y=rl.getY()-cordTop, x=rl.getX()-cordLeft-1;
-			for(int j=0;j<=rl.getCount();j++){
+		for(int r=0;r<size;r++){
+			int y=ys[r]-cordTop, x=xs[r]-cordLeft-1;
+			for(int j=0;j<=counts[r];j++){
 				moment+=pow(++x,p)*pow(y,q);
 				++count;
 			}
@@ -413,12 +562,15 @@ public final class ConnectedComponent implements Externalizable,Comparable<Conne
 	 * @return the moment
 	 */
 	public double getCentralMoment(int p,int q){
+		if(p+q<=ShapeFeatures.MAX_ORDER){
+			return getShapeFeatures().getCentralMoment(p,q);
+		}
 		double moment=0;
 		int count=0;
 		double xmean=getMoment(1,0)+cordLeft, ymean=getMoment(0,1)+cordTop;
-		for(RunLength rl:runlengths){
-			double y=rl.getY()-ymean, x=rl.getX()-xmean-1;
-			for(int j=0;j<=rl.getCount();j++){
+		for(int r=0;r<size;r++){
+			double y=ys[r]-ymean, x=xs[r]-xmean-1;
+			for(int j=0;j<=counts[r];j++){
 				moment+=pow(++x,p)*pow(y,q);
 				++count;
 			}
@@ -432,7 +584,7 @@ public final class ConnectedComponent implements Externalizable,Comparable<Conne
 	 * @return the horizontal center
 	 */
 	public double getCenterX(){
-		return getMoment(1,0)/getWidth();
+		return getShapeFeatures().getCenterX();
 	}
 	/**
 	 * Get the vertical center
@@ -440,7 +592,7 @@ public final class ConnectedComponent implements Externalizable,Comparable<Conne
 	 * @return the vertical center
 	 */
 	public double getCenterY(){
-		return getMoment(0,1)/getHeight();
+		return getShapeFeatures().getCenterY();
 	}
 	/**
 	 * Get the direction
@@ -448,7 +600,7 @@ public final class ConnectedComponent implements Externalizable,Comparable<Conne
 	 * @return direction
 	 */
 	public double getDirection(){
-		return 0.5f*Math.atan2(2*getCentralMoment(1,1),getCentralMoment(2,0)-getCentralMoment(0,2));
+		return getShapeFeatures().getDirection();
 	}
 	/**
 	 * Get the density
@@ -456,7 +608,7 @@ public final class ConnectedComponent implements Externalizable,Comparable<Conne
 	 * @return density
 	 */
 	public double getDensity(){
-		return ((double)getWeight())/getBox().getArea();
+		return getShapeFeatures().getDensity();
 	}
 	/**
 	 * Get the Weight
@@ -464,95 +616,17 @@ public final class ConnectedComponent implements Externalizable,Comparable<Conne
 	 * @return weight
 	 */
 	public int getWeight(){
-		int total=0;
-		for(RunLength rl:runlengths){
-			total+=rl.getCount()+1;
-		}
-		return total;
+		return getShapeFeatures().getWeight();
 	}
 	/**
-	 * Get the number of holes
+	 * Get the number of holes, that is 8-connected background regions not
+	 * connected to the outside of the bounding box. It is computed from the
+	 * Euler number given by overlaps of runs in adjacent rows.
 	 *
 	 * @return number of holes
 	 */
 	public int getNumberOfHoles(){
-		int width=getWidth(), height=getHeight();
-		int holes=-1;
-		int curr_id=0;
-		int[] label=new int[width+2];
-		ArrayList<Integer> parent=new ArrayList<>();
-		parent.add(-1);
-		Iterator<RunLength> iter=runlengths.iterator();
-		RunLength curr=iter.hasNext()?iter.next():null;
-		for(int i=0;i<height;i++){
-			int[] tmp=new int[width+2];
-			while(curr!=null&&curr.getY()-cordTop==i){
-				for(int j=curr.getX()-cordLeft+1, k=0;k<=curr.getCount();j++,k++){
-					tmp[j]=-1;
-				}
-				curr=iter.hasNext()?iter.next():null;
-			}
-			for(int j=1;j<width+2;j++){
-				if(tmp[j]==0){
-					TreeSet<Integer> neighbour=new TreeSet<>();
-					if(label[j-1]>=0){
-						neighbour.add(label[j-1]);
-					}
-					if(label[j]>=0){
-						neighbour.add(label[j]);
-					}
-					if(j<=width&&label[j+1]>=0){
-						neighbour.add(label[j+1]);
-					}
-					if(tmp[j-1]>=0){
-						neighbour.add(tmp[j-1]);
-					}
-					if(neighbour.isEmpty()){
-						parent.add(-1);
-						tmp[j]=++curr_id;
-					}else{
-						Integer first=neighbour.first();
-						tmp[j]=first;
-						Integer next=first;
-						while((next=neighbour.higher(next))!=null){
-							parent.set(next,first);
-						}
-					}
-				}
-			}
-			/*for(int j=1;j<width+2;j++)
-				if(tmp[j]==0)
-					if(label[j]>=0&&tmp[j-1]>=0){
-						if(label[j]==tmp[j-1])
-							tmp[j]=tmp[j-1];
-						else if(label[j]<tmp[j-1]){
-							parent.set(tmp[j-1],label[j]);
-							tmp[j]=label[j];
-						}else{
-							parent.set(label[j],tmp[j-1]);
-							tmp[j]=tmp[j-1];
-						}
-					}else if(label[j]>=0&&tmp[j-1]<0)
-						tmp[j]=label[j];
-					else if(label[j]<0&&tmp[j-1]>=0)
-						tmp[j]=tmp[j-1];
-					else if(label[j]<0&&tmp[j-1]<0){
-						parent.add(-1);
-						tmp[j]=++curr_id;
-					}*/
-			label=tmp;
-		}
-		for(int j=1;j<width+1;j++){
-			if(label[j]>0){
-				parent.set(label[j],0);
-			}
-		}
-		for(Integer par:parent){
-			if(par==-1){
-				++holes;
-			}
-		}
-		return holes;
+		return getShapeFeatures().getNumberOfHoles();
 	}
 	/**
 	 * Get two dimension pixels array representation
@@ -561,9 +635,9 @@ public final class ConnectedComponent implements Externalizable,Comparable<Conne
 	 */
 	public byte[][] toPixelArray(){
 		byte[][] pixels=new byte[getHeight()][getWidth()];
-		for(RunLength rl:runlengths){
-			int i=rl.getY()-cordTop, j=rl.getX()-cordLeft-1;
-			for(int k=0;k<=rl.getCount();k++){
+		for(int r=0;r<size;r++){
+			int i=ys[r]-cordTop, j=xs[r]-cordLeft-1;
+			for(int k=0;k<=counts[r];k++){
 				pixels[i][++j]=1;
 			}
 		}
@@ -577,9 +651,9 @@ public final class ConnectedComponent implements Externalizable,Comparable<Conne
 	public byte[] toPixelArray2(){
 		byte[] pixels=new byte[getHeight()*getWidth()];
 		int width=getWidth();
-		for(RunLength rl:runlengths){
-			int i=rl.getY()-cordTop, j=rl.getX()-cordLeft-1;
-			for(int k=0;k<=rl.getCount();k++){
+		for(int r=0;r<size;r++){
+			int i=ys[r]-cordTop, j=xs[r]-cordLeft-1;
+			for(int k=0;k<=counts[r];k++){
 				pixels[i*width+(++j)]=1;
 			}
 		}
@@ -607,19 +681,23 @@ public final class ConnectedComponent implements Externalizable,Comparable<Conne
 		return str.toString();
 	}
 	/**
-	 * Write this object to stream
+	 * Write this object to stream, coordinates relative to the bounding box
+	 * are written as bytes, use ComponentCodec for larger components
 	 *
 	 * @param out output stream
-	 * @throws java.io.IOException
+	 * @throws java.io.IOException if the component is too large
 	 */
 	@Override
 	public void writeExternal(ObjectOutput out) throws IOException{
+		if(cordRight-cordLeft>255||cordBottom-cordTop>=255){
+			throw new IOException("Component too large to be written in this format");
+		}
 		out.writeByte(cordRight-cordLeft);
 		out.writeByte(cordBottom-cordTop);
-		for(RunLength rl:runlengths){
-			out.writeByte(rl.getY()-cordTop);
-			out.writeByte(rl.getX()-cordLeft);
-			out.writeByte(rl.getCount());
+		for(int r=0;r<size;r++){
+			out.writeByte(ys[r]-cordTop);
+			out.writeByte(xs[r]-cordLeft);
+			out.writeByte(counts[r]);
 		}
 		out.writeByte(255);
 	}
@@ -631,6 +709,8 @@ public final class ConnectedComponent implements Externalizable,Comparable<Conne
 	 */
 	@Override
 	public void readExternal(ObjectInput in) throws IOException{
+		size=0;
+		features=null;
 		cordLeft=0;
 		cordTop=0;
 		cordRight=in.readUnsignedByte();
@@ -640,7 +720,8 @@ public final class ConnectedComponent implements Externalizable,Comparable<Conne
 			if(first==255){
 				break;
 			}
-			runlengths.add(new RunLength(first,in.readUnsignedByte(),in.readUnsignedByte()));
+			int x=in.readUnsignedByte();
+			append(first,x,in.readUnsignedByte());
 		}
 	}
 	/**
@@ -665,20 +746,44 @@ public final class ConnectedComponent implements Externalizable,Comparable<Conne
 	public BoundBox getBox(){
 		return new BoundBox(cordLeft,cordRight,cordTop,cordBottom);
 	}
+	/**
+	 * Change the bounds of the component
+	 *
+	 * @param left left bound
+	 * @param right right bound
+	 * @param top upper bound
+	 * @param bottom lower bound
+	 */
+	public void setBounds(int left,int right,int top,int bottom){
+		cordLeft=left;
+		cordRight=right;
+		cordTop=top;
+		cordBottom=bottom;
+		features=null;
+	}
 	public void fix(){
-		Collections.sort(runlengths);
-		ListIterator<RunLength> iterator=runlengths.listIterator();
-		if(iterator.hasNext()){
-			RunLength prev=iterator.next();
-			while(iterator.hasNext()){
-				RunLength curr=iterator.next();
-				if(curr.getY()==prev.getY()&&curr.getX()<=prev.getX()+prev.getCount()){
-					prev.reset(prev.getY(),prev.getX(),Math.max(prev.getX()+prev.getCount(),curr.getX()+curr.getCount())-prev.getX());
-					iterator.remove();
-				}else{
-					prev=curr;
-				}
+		Integer[] order=new Integer[size];
+		for(int i=0;i<size;i++){
+			order[i]=i;
+		}
+		Arrays.sort(order,(i,j)->ys[i]!=ys[j]?Integer.compare(ys[i],ys[j]):Integer.compare(xs[i],xs[j]));
+		int[] newYs=new int[Math.max(size,INITIAL_CAPACITY)], newXs=new int[newYs.length], newCounts=new int[newYs.length];
+		int k=-1;
+		for(Integer i:order){
+			int y=ys[i], x=xs[i], count=counts[i];
+			if(k>=0&&y==newYs[k]&&x<=newXs[k]+newCounts[k]){
+				newCounts[k]=Math.max(newXs[k]+newCounts[k],x+count)-newXs[k];
+			}else{
+				++k;
+				newYs[k]=y;
+				newXs[k]=x;
+				newCounts[k]=count;
 			}
 		}
+		ys=newYs;
+		xs=newXs;
+		counts=newCounts;
+		size=k+1;
+		features=null;
 	}
 }
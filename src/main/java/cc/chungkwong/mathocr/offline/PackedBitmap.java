@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2019 Chan Chung Kwong
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.chungkwong.mathocr.offline;
+import cc.chungkwong.mathocr.offline.preprocessor.*;
+import java.awt.image.*;
+import java.util.*;
+/**
+ * Binary bitmap image storing 64 pixels in a long, a set bit means a black
+ * pixel
+ *
+ * @author Chan Chung Kwong
+ */
+public class PackedBitmap{
+	private final long[] words;
+	private final int wordsPerRow;
+	private final int width;
+	private final int height;
+	/**
+	 * Create a blank image
+	 *
+	 * @param width width
+	 * @param height height
+	 */
+	public PackedBitmap(int width,int height){
+		this.width=width;
+		this.height=height;
+		this.wordsPerRow=(width+63)>>>6;
+		this.words=new long[wordsPerRow*height];
+	}
+	/**
+	 * Create a image
+	 *
+	 * @param data pixels of the image where black is marked 0
+	 * @param width width
+	 * @param height height
+	 */
+	public PackedBitmap(byte[] data,int width,int height){
+		this(new BinaryView(data,width,height));
+	}
+	/**
+	 * Create a image
+	 *
+	 * @param view source of pixels
+	 */
+	public PackedBitmap(BinaryView view){
+		this(view.getWidth(),view.getHeight());
+		byte[] data=view.getData();
+		for(int i=0, base=0;i<height;i++,base+=wordsPerRow){
+			for(int w=0, ind=view.getIndex(0,i);w<wordsPerRow;w++){
+				long word=0;
+				for(int j=0, jmax=Math.min(64,width-(w<<6));j<jmax;j++,ind++){
+					if(data[ind]==0){
+						word|=1L<<j;
+					}
+				}
+				words[base+w]=word;
+			}
+		}
+	}
+	/**
+	 * Create a image
+	 *
+	 * @param bitmap source of pixels
+	 */
+	public PackedBitmap(Bitmap bitmap){
+		this(bitmap.getData(),bitmap.getWidth(),bitmap.getHeight());
+	}
+	/**
+	 * Create a image, unlike Bitmap, no padding is added
+	 *
+	 * @param image source of pixels
+	 */
+	public PackedBitmap(BufferedImage image){
+		this(BinaryView.of(image));
+	}
+	/**
+	 * Convert to unpacked form
+	 *
+	 * @return the bitmap
+	 */
+	public Bitmap toBitmap(){
+		return new Bitmap(toByteArray(),width,height);
+	}
+	/**
+	 * Convert to a grayscale image where black pixels are 0 and white pixels
+	 * are 255
+	 *
+	 * @return the image
+	 */
+	public BufferedImage toBufferedImage(){
+		BufferedImage image=new BufferedImage(width,height,BufferedImage.TYPE_BYTE_GRAY);
+		WritableRaster raster=image.getRaster();
+		DataBufferByte buffer=(DataBufferByte)raster.getDataBuffer();
+		unpack(buffer.getData(),buffer.getOffset(),((ComponentSampleModel)raster.getSampleModel()).getScanlineStride());
+		return image;
+	}
+	private byte[] toByteArray(){
+		byte[] data=new byte[width*height];
+		unpack(data,0,width);
+		return data;
+	}
+	private void unpack(byte[] data,int offset,int stride){
+		for(int i=0, base=offset;i<height;i++,base+=stride){
+			Arrays.fill(data,base,base+width,(byte)0xFF);
+			for(int j=nextSetBit(i,0);j!=-1;j=nextSetBit(i,j+1)){
+				data[base+j]=0;
+			}
+		}
+	}
+	/**
+	 * Check if a pixel is black
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @return black or not
+	 */
+	public boolean get(int x,int y){
+		return (words[y*wordsPerRow+(x>>>6)]&(1L<<x))!=0;
+	}
+	/**
+	 * Set the color of a pixel
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param black black or not
+	 */
+	public void set(int x,int y,boolean black){
+		if(black){
+			words[y*wordsPerRow+(x>>>6)]|=1L<<x;
+		}else{
+			words[y*wordsPerRow+(x>>>6)]&=~(1L<<x);
+		}
+	}
+	/**
+	 * Find the first black pixel in a row at or after a given position
+	 *
+	 * @param row the row
+	 * @param from the x coordinate to start from
+	 * @return the x coordinate of the pixel or -1 if not found
+	 */
+	public int nextSetBit(int row,int from){
+		if(from>=width){
+			return -1;
+		}
+		int base=row*wordsPerRow, w=from>>>6;
+		long word=words[base+w]&(-1L<<from);
+		while(word==0){
+			if(++w==wordsPerRow){
+				return -1;
+			}
+			word=words[base+w];
+		}
+		return (w<<6)+Long.numberOfTrailingZeros(word);
+	}
+	/**
+	 * Find the first white pixel in a row at or after a given position
+	 *
+	 * @param row the row
+	 * @param from the x coordinate to start from
+	 * @return the x coordinate of the pixel or width if not found
+	 */
+	public int nextClearBit(int row,int from){
+		if(from>=width){
+			return width;
+		}
+		int base=row*wordsPerRow, w=from>>>6;
+		long word=~words[base+w]&(-1L<<from);
+		while(word==0){
+			if(++w==wordsPerRow){
+				return width;
+			}
+			word=~words[base+w];
+		}
+		return Math.min((w<<6)+Long.numberOfTrailingZeros(word),width);
+	}
+	/**
+	 * Check if a row contains no black pixel
+	 *
+	 * @param row the row
+	 * @return blank or not
+	 */
+	public boolean isBlank(int row){
+		for(int w=row*wordsPerRow, wmax=w+wordsPerRow;w<wmax;w++){
+			if(words[w]!=0){
+				return false;
+			}
+		}
+		return true;
+	}
+	/**
+	 * Count black pixels in a row
+	 *
+	 * @param row the row
+	 * @return the number of black pixels
+	 */
+	public int count(int row){
+		int count=0;
+		for(int w=row*wordsPerRow, wmax=w+wordsPerRow;w<wmax;w++){
+			count+=Long.bitCount(words[w]);
+		}
+		return count;
+	}
+	/**
+	 * Count black pixels in the image
+	 *
+	 * @return the number of black pixels
+	 */
+	public int count(){
+		int count=0;
+		for(long word:words){
+			count+=Long.bitCount(word);
+		}
+		return count;
+	}
+	/**
+	 * Extract runs of black pixels in a row
+	 *
+	 * @param row the row
+	 * @param runs array to store the runs, the i-th run starts at runs[2*i]
+	 * and ends before runs[2*i+1], the length should be at least width+1
+	 * @return number of runs
+	 */
+	public int getRuns(int row,int[] runs){
+		int count=0;
+		for(int start=nextSetBit(row,0);start!=-1;start=nextSetBit(row,runs[count*2-1])){
+			runs[count*2]=start;
+			runs[count*2+1]=nextClearBit(row,start);
+			++count;
+		}
+		return count;
+	}
+	/**
+	 * Extract runs of black pixels in a row
+	 *
+	 * @param row the row
+	 * @return the runs
+	 */
+	public List<RunLength> getRunLengths(int row){
+		List<RunLength> list=new ArrayList<>();
+		for(int start=nextSetBit(row,0);start!=-1;){
+			int end=nextClearBit(row,start);
+			list.add(new RunLength(row,start,end-start-1));
+			start=nextSetBit(row,end);
+		}
+		return list;
+	}
+	/**
+	 *
+	 * @return the words storing the pixels, row by row
+	 */
+	public long[] getWords(){
+		return words;
+	}
+	/**
+	 *
+	 * @return number of words used by a row
+	 */
+	public int getWordsPerRow(){
+		return wordsPerRow;
+	}
+	/**
+	 *
+	 * @return height
+	 */
+	public int getHeight(){
+		return height;
+	}
+	/**
+	 *
+	 * @return width
+	 */
+	public int getWidth(){
+		return width;
+	}
+	@Override
+	public String toString(){
+		StringBuilder buf=new StringBuilder();
+		for(int i=0;i<height;i++){
+			for(int j=0;j<width;j++){
+				buf.append(get(j,i)?'x':'o');
+			}
+			buf.append('\n');
+		}
+		return buf.toString();
+	}
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2019 Chan Chung Kwong
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.chungkwong.mathocr.offline;
+import cc.chungkwong.mathocr.common.*;
+import java.util.*;
+/**
+ * Shape features of a connected component computed in one pass over its run
+ * lengths. Sums of powers of x over a run are evaluated in closed form, so the
+ * cost depends on the number of runs instead of the number of pixels.
+ *
+ * Moments are taken with respect to the top-left corner of the bounding box,
+ * as in ConnectedComponent. Holes are background regions, 8-connected, not
+ * connected to the outside of the bounding box, they are counted by the Euler
+ * number of the 4-connected foreground.
+ *
+ * @author Chan Chung Kwong
+ */
+public final class ShapeFeatures{
+	/**
+	 * The maximum order of moments computed
+	 */
+	public static final int MAX_ORDER=3;
+	private final int width, height, weight, holes, euler;
+	private final double[][] moments=new double[MAX_ORDER+1][MAX_ORDER+1];
+	private final double[][] centralMoments=new double[MAX_ORDER+1][MAX_ORDER+1];
+	private final double[] hu;
+	private final byte[] horizontalCrossing, verticalCrossing;
+	/**
+	 * Compute the features of a component
+	 *
+	 * @param component the component, its run lengths should be sorted
+	 */
+	public ShapeFeatures(ConnectedComponent component){
+		width=component.getWidth();
+		height=component.getHeight();
+		int left=component.getLeft(), top=component.getTop();
+		int size=component.getRunLengthCount();
+		horizontalCrossing=new byte[height];
+		int[] diff=new int[width+1];
+		//intervals of the previous row and the current row after merging touching runs
+		int[] lastStarts=new int[size], lastEnds=new int[size], lastIds=new int[size];
+		int[] starts=new int[size], ends=new int[size], ids=new int[size];
+		int lastCount=0, lastY=Integer.MIN_VALUE;
+		Partition partition=new Partition();
+		int edges=0, total=0;
+		double[] row=new double[MAX_ORDER+1];
+		for(int r=0;r<size;){
+			int y=component.getRunY(r), count=0;
+			Arrays.fill(row,0);
+			for(;r<size&&component.getRunY(r)==y;r++){
+				int start=component.getRunX(r)-left, end=start+component.getRunCount(r);
+				total+=end-start+1;
+				addPowerSums(row,start,end);
+				++horizontalCrossing[y-top];
+				if(count>0&&start<=ends[count-1]+1){
+					ends[count-1]=Math.max(ends[count-1],end);
+				}else{
+					starts[count]=start;
+					ends[count]=end;
+					ids[count]=partition.size();
+					partition.makeSet();
+					++count;
+				}
+			}
+			double yPower=1;
+			for(int q=0;q<=MAX_ORDER;q++){
+				for(int p=0;p+q<=MAX_ORDER;p++){
+					moments[p][q]+=row[p]*yPower;
+				}
+				yPower*=y-top;
+			}
+			for(int i=0;i<count;i++){
+				++diff[starts[i]];
+				--diff[ends[i]+1];
+			}
+			if(lastY==y-1){
+				for(int i=0, j=0;i<lastCount&&j<count;){
+					int from=Math.max(lastStarts[i],starts[j]), to=Math.min(lastEnds[i],ends[j]);
+					if(from<=to){
+						++edges;
+						partition.union(lastIds[i],ids[j]);
+						--diff[from];
+						++diff[to+1];
+					}
+					if(lastEnds[i]<ends[j]){
+						++i;
+					}else{
+						++j;
+					}
+				}
+			}
+			int[] tmp=lastStarts;
+			lastStarts=starts;
+			starts=tmp;
+			tmp=lastEnds;
+			lastEnds=ends;
+			ends=tmp;
+			tmp=lastIds;
+			lastIds=ids;
+			ids=tmp;
+			lastCount=count;
+			lastY=y;
+		}
+		weight=total;
+		euler=partition.size()-edges;
+		holes=partition.getSetCount()-euler;
+		verticalCrossing=new byte[width];
+		for(int j=0, acc=0;j<width;j++){
+			acc+=diff[j];
+			verticalCrossing[j]=(byte)acc;
+		}
+		computeCentralMoments();
+		hu=computeHuMoments();
+	}
+	/**
+	 * Add sum of x^p for x from start to end to sums[p]
+	 */
+	private static void addPowerSums(double[] sums,int start,int end){
+		sums[0]+=end-start+1;
+		sums[1]+=sumOfPowers1(end)-sumOfPowers1(start-1);
+		sums[2]+=sumOfPowers2(end)-sumOfPowers2(start-1);
+		sums[3]+=sumOfPowers3(end)-sumOfPowers3(start-1);
+	}
+	private static double sumOfPowers1(double n){
+		return n*(n+1)/2;
+	}
+	private static double sumOfPowers2(double n){
+		return n*(n+1)*(2*n+1)/6;
+	}
+	private static double sumOfPowers3(double n){
+		double s=n*(n+1)/2;
+		return s*s;
+	}
+	private void computeCentralMoments(){
+		double[][] m=moments, mu=centralMoments;
+		double m00=m[0][0], xm=m[1][0]/m00, ym=m[0][1]/m00;
+		mu[0][0]=m00;
+		mu[2][0]=m[2][0]-xm*m[1][0];
+		mu[0][2]=m[0][2]-ym*m[0][1];
+		mu[1][1]=m[1][1]-xm*m[0][1];
+		mu[3][0]=m[3][0]-3*xm*m[2][0]+2*xm*xm*m[1][0];
+		mu[0][3]=m[0][3]-3*ym*m[0][2]+2*ym*ym*m[0][1];
+		mu[2][1]=m[2][1]-2*xm*m[1][1]-ym*m[2][0]+2*xm*xm*m[0][1];
+		mu[1][2]=m[1][2]-2*ym*m[1][1]-xm*m[0][2]+2*ym*ym*m[1][0];
+		for(int p=0;p<=MAX_ORDER;p++){
+			for(int q=0;p+q<=MAX_ORDER;q++){
+				mu[p][q]/=Math.pow(m00,(p+q)*0.5+1);
+			}
+		}
+	}
+	private double[] computeHuMoments(){
+		double n20=centralMoments[2][0], n02=centralMoments[0][2], n11=centralMoments[1][1];
+		double n30=centralMoments[3][0], n03=centralMoments[0][3], n21=centralMoments[2][1], n12=centralMoments[1][2];
+		double a=n30+n12, b=n21+n03, c=n30-3*n12, d=3*n21-n03;
+		return new double[]{
+			n20+n02,
+			(n20-n02)*(n20-n02)+4*n11*n11,
+			c*c+d*d,
+			a*a+b*b,
+			c*a*(a*a-3*b*b)+d*b*(3*a*a-b*b),
+			(n20-n02)*(a*a-b*b)+4*n11*a*b,
+			d*a*(a*a-3*b*b)-c*b*(3*a*a-b*b)
+		};
+	}
+	/**
+	 * Get the moment, normalized by the number of pixels
+	 *
+	 * @param p the order of x, p+q should not exceed MAX_ORDER
+	 * @param q the order of y
+	 * @return the moment
+	 */
+	public double getMoment(int p,int q){
+		return moments[p][q]/weight;
+	}
+	/**
+	 * Get the standardized moment
+	 *
+	 * @param p the order of x, p+q should not exceed MAX_ORDER
+	 * @param q the order of y
+	 * @return the moment
+	 */
+	public double getCentralMoment(int p,int q){
+		return centralMoments[p][q];
+	}
+	/**
+	 * Get Hu's seven moment invariants
+	 *
+	 * @return the invariants
+	 */
+	public double[] getHuMoments(){
+		return hu.clone();
+	}
+	/**
+	 * Get the horizontal center
+	 *
+	 * @return the horizontal center
+	 */
+	public double getCenterX(){
+		return getMoment(1,0)/width;
+	}
+	/**
+	 * Get the vertical center
+	 *
+	 * @return the vertical center
+	 */
+	public double getCenterY(){
+		return getMoment(0,1)/height;
+	}
+	/**
+	 * Get the direction
+	 *
+	 * @return direction
+	 */
+	public double getDirection(){
+		return 0.5*Math.atan2(2*centralMoments[1][1],centralMoments[2][0]-centralMoments[0][2]);
+	}
+	/**
+	 * Get the density
+	 *
+	 * @return density
+	 */
+	public double getDensity(){
+		return ((double)weight)/(width*height);
+	}
+	/**
+	 * Get the Weight
+	 *
+	 * @return weight
+	 */
+	public int getWeight(){
+		return weight;
+	}
+	/**
+	 * Get the number of holes
+	 *
+	 * @return number of holes
+	 */
+	public int getNumberOfHoles(){
+		return holes;
+	}
+	/**
+	 * Get the Euler number of the 4-connected foreground, which is the number
+	 * of merged runs minus the number of overlapping pairs of runs in adjacent
+	 * rows
+	 *
+	 * @return the Euler number
+	 */
+	public int getEulerNumber(){
+		return euler;
+	}
+	/**
+	 * Get the horizontal crossing numbers
+	 *
+	 * @return number of runs in each row
+	 */
+	public byte[] getHorizontalCrossing(){
+		return horizontalCrossing.clone();
+	}
+	/**
+	 * Get the vertical crossing numbers
+	 *
+	 * @return number of runs in each column
+	 */
+	public byte[] getVerticalCrossing(){
+		return verticalCrossing.clone();
+	}
+}
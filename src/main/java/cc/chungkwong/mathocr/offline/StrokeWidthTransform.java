@@ -15,11 +15,13 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 package cc.chungkwong.mathocr.offline;
+import cc.chungkwong.mathocr.common.*;
 import cc.chungkwong.mathocr.offline.preprocessor.*;
 import java.awt.*;
 import java.awt.image.*;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 import javax.imageio.*;
 import javax.swing.*;
@@ -30,6 +32,8 @@ import javax.swing.*;
  */
 public class StrokeWidthTransform{
 	public static final byte HORIZONTAL=1, VERTICAL=2, THROW=4, PRESS=8;
+	private static final int MIN_STRIP_HEIGHT=64;
+	private static final int MIN_BATCH_SIZE=256;
 	/**
 	 * Transform a bitmap image
 	 *
@@ -37,74 +41,313 @@ public class StrokeWidthTransform{
 	 * @return stroke width space
 	 */
 	public static StrokeSpace transform(Bitmap bitmap){
-		int width=bitmap.getWidth();
-		int height=bitmap.getHeight();
+		return transform(bitmap,null);
+	}
+	/**
+	 * Transform a bitmap image in parallel. The image is split into strips of
+	 * rows, runs entering a strip are measured by walking upward and runs
+	 * leaving a strip are completed by walking downward, so the result is the
+	 * same as the sequential one.
+	 *
+	 * @param bitmap to be transform
+	 * @param pool the pool to be used, null for sequential processing
+	 * @return stroke width space
+	 */
+	public static StrokeSpace transform(Bitmap bitmap,ForkJoinPool pool){
+		Scanner scanner=new Scanner(bitmap.getData(),bitmap.getWidth(),bitmap.getHeight());
+		Strips.forEach(pool,Strips.split(pool,bitmap.getHeight(),MIN_STRIP_HEIGHT),(index,start,end)->scanner.scan(start,end));
+		return scanner.getSpace();
+	}
+	/**
+	 * Transform the bounding box of a connected component, other pixels in
+	 * the box are considered as white. The result agrees with the one of the
+	 * whole image at the pixels of the component.
+	 *
+	 * @param component the component
+	 * @param width width of the image containing the component
+	 * @param height height of the image containing the component
+	 * @return stroke width space of the bounding box
+	 */
+	public static StrokeSpace transform(ConnectedComponent component,int width,int height){
+		int left=component.getLeft(), top=component.getTop();
+		int w=component.getWidth(), h=component.getHeight();
+		//white pixels ending runs may lie just outside the box but not outside the image
+		int padLeft=left>0?1:0, padRight=left+w<width?1:0, padBottom=top+h<height?1:0;
+		int paddedWidth=w+padLeft+padRight, paddedHeight=h+padBottom;
+		byte[] pixels=new byte[paddedWidth*paddedHeight];
+		Arrays.fill(pixels,(byte)0xFF);
+		for(int r=0;r<component.getRunLengthCount();r++){
+			int start=(component.getRunY(r)-top)*paddedWidth+component.getRunX(r)-left+padLeft;
+			Arrays.fill(pixels,start,start+component.getRunCount(r)+1,(byte)0);
+		}
+		Scanner scanner=new Scanner(pixels,paddedWidth,paddedHeight);
+		scanner.scan(0,paddedHeight);
+		StrokeSpace padded=scanner.getSpace();
+		if(paddedWidth==w&&paddedHeight==h){
+			return padded;
+		}
+		short[] thicknessH=new short[w*h], thicknessS=new short[w*h];
+		byte[] direction=new byte[w*h];
+		for(int i=0, from=padLeft, to=0;i<h;i++,from+=paddedWidth,to+=w){
+			System.arraycopy(padded.getThicknessH(),from,thicknessH,to,w);
+			System.arraycopy(padded.getThicknessS(),from,thicknessS,to,w);
+			System.arraycopy(padded.getDirection(),from,direction,to,w);
+		}
+		return new StrokeSpace(direction,thicknessH,thicknessS,w,h);
+	}
+	/**
+	 * Transform the bounding boxes of all the components in parallel
+	 *
+	 * @param components the components
+	 * @param width width of the image containing the components
+	 * @param height height of the image containing the components
+	 * @param pool the pool to be used, null for sequential processing
+	 * @return stroke width spaces of the bounding boxes
+	 */
+	public static StrokeSpace[] transform(ComponentPool components,int width,int height,ForkJoinPool pool){
+		StrokeSpace[] spaces=new StrokeSpace[components.getComponents().size()];
+		Strips.forEach(pool,Strips.split(pool,spaces.length,MIN_BATCH_SIZE),(index,start,end)->{
+			for(int i=start;i<end;i++){
+				spaces[i]=transform(components.getComponents().get(i),width,height);
+			}
+		});
+		return spaces;
+	}
+	/**
+	 * Compute the thickness in horizontal or vertical direction at a pixel by
+	 * walking along the runs through it, the result is the same as the one in
+	 * the stroke width space of the bitmap
+	 *
+	 * @param bitmap the bitmap
+	 * @param x the x coordinate of the pixel
+	 * @param y the y coordinate of the pixel
+	 * @return the thickness, 0 if unknown
+	 */
+	public static int getThicknessH(Bitmap bitmap,int x,int y){
+		return getThicknessH(bitmap,x,y,(byte)0);
+	}
+	/**
+	 * Compute the thickness in horizontal or vertical direction at a pixel,
+	 * pixels marked as erased are considered as black, so that the thickness
+	 * is still available after thinning by Thinning.thin(bitmap,erased)
+	 *
+	 * @param bitmap the bitmap
+	 * @param x the x coordinate of the pixel
+	 * @param y the y coordinate of the pixel
+	 * @param erased the value of erased pixels
+	 * @return the thickness, 0 if unknown
+	 */
+	public static int getThicknessH(Bitmap bitmap,int x,int y,byte erased){
+		return getThickness(bitmap,x,y,erased,1,0,0,1);
+	}
+	/**
+	 * Compute the thickness in throwing or pressing direction at a pixel by
+	 * walking along the runs through it, the result is the same as the one in
+	 * the stroke width space of the bitmap
+	 *
+	 * @param bitmap the bitmap
+	 * @param x the x coordinate of the pixel
+	 * @param y the y coordinate of the pixel
+	 * @return the thickness, 0 if unknown
+	 */
+	public static int getThicknessS(Bitmap bitmap,int x,int y){
+		return getThicknessS(bitmap,x,y,(byte)0);
+	}
+	/**
+	 * Compute the thickness in throwing or pressing direction at a pixel,
+	 * pixels marked as erased are considered as black, so that the thickness
+	 * is still available after thinning by Thinning.thin(bitmap,erased)
+	 *
+	 * @param bitmap the bitmap
+	 * @param x the x coordinate of the pixel
+	 * @param y the y coordinate of the pixel
+	 * @param erased the value of erased pixels
+	 * @return the thickness, 0 if unknown
+	 */
+	public static int getThicknessS(Bitmap bitmap,int x,int y,byte erased){
+		return getThickness(bitmap,x,y,erased,1,1,-1,1);
+	}
+	/**
+	 * Walk along the two runs with a doubling limit, so that the cost depends
+	 * on the shorter run instead of the longer one, unless the shorter one
+	 * reaches the border
+	 */
+	private static int getThickness(Bitmap bitmap,int x,int y,byte erased,int dx1,int dy1,int dx2,int dy2){
+		byte pixel=bitmap.getData()[y*bitmap.getWidth()+x];
+		if(pixel!=0&&pixel!=erased){
+			return 0;
+		}
+		for(int limit=1;;limit*=2){
+			int t1=getRunLength(bitmap,x,y,erased,dx1,dy1,limit), t2=getRunLength(bitmap,x,y,erased,dx2,dy2,limit);
+			if(t1>0&&t2>0){
+				return Math.min(t1,t2);
+			}else if(t1>0){
+				return t1;
+			}else if(t2>0){
+				return t2;
+			}else if(t1==0&&t2==0){
+				return 0;
+			}else if(t1==0){
+				return getRunLength(bitmap,x,y,erased,dx2,dy2,Integer.MAX_VALUE);
+			}else if(t2==0){
+				return getRunLength(bitmap,x,y,erased,dx1,dy1,Integer.MAX_VALUE);
+			}
+		}
+	}
+	/**
+	 * @return length of the run through a black pixel in a direction, 0 if
+	 * the run is not ended by a white pixel, -1 if the run is longer than the
+	 * limit
+	 */
+	private static int getRunLength(Bitmap bitmap,int x,int y,byte erased,int dx,int dy,int limit){
 		byte[] pixels=bitmap.getData();
-		short[] thicknessH=new short[width*height];
-		short[] thicknessS=new short[width*height];
-		byte[] direction=new byte[width*height];
-		int[] nC=new int[width];
-		int[] nwC=new int[width+1];
-		int[] neC=new int[width+1];
-		for(int i=0, ind=0;i<height;i++){
-			int wC=0;
-			int nwCp=0;
-			for(int j=0;j<width;j++,ind++){
-				if(pixels[ind]==0){
-					++wC;
-					++nC[j];
-					int tmp=nwC[j+1];
-					nwC[j+1]=nwCp+1;
-					nwCp=tmp;
-					neC[j]=neC[j+1]+1;
-				}else{
-					if(wC>0){
-						int t=wC;
-						for(int k=1, ind0=ind-1;k<=t;k++,ind0--){
-							if((direction[ind0]&3)==0||t<thicknessH[ind0]){
-								direction[ind0]=(byte)((direction[ind0]&~HORIZONTAL)|VERTICAL);
-								thicknessH[ind0]=(short)t;
-							}
+		int width=bitmap.getWidth(), height=bitmap.getHeight();
+		int length=1;
+		for(int i=x-dx, j=y-dy;length<=limit&&i>=0&&i<width&&j>=0&&(pixels[j*width+i]==0||pixels[j*width+i]==erased);i-=dx,j-=dy){
+			++length;
+		}
+		int i=x+dx, j=y+dy;
+		for(;length<=limit&&i>=0&&i<width&&j<height&&(pixels[j*width+i]==0||pixels[j*width+i]==erased);i+=dx,j+=dy){
+			++length;
+		}
+		if(length>limit){
+			return -1;
+		}
+		return i>=0&&i<width&&j<height?length:0;
+	}
+	/**
+	 * Raster scan recording lengths of runs ending at white pixels, strips of
+	 * rows can be scanned concurrently since only pixels in the strip are
+	 * written. Pixels updated more than once take the shortest run, ties are
+	 * broken by the order in which the runs end.
+	 */
+	private static final class Scanner{
+		private final byte[] pixels;
+		private final int width, height;
+		private final short[] thicknessH, thicknessS;
+		private final byte[] direction;
+		Scanner(byte[] pixels,int width,int height){
+			this.pixels=pixels;
+			this.width=width;
+			this.height=height;
+			thicknessH=new short[width*height];
+			thicknessS=new short[width*height];
+			direction=new byte[width*height];
+		}
+		StrokeSpace getSpace(){
+			return new StrokeSpace(direction,thicknessH,thicknessS,width,height);
+		}
+		void scan(int start,int end){
+			int[] nC=new int[width];
+			int[] nwC=new int[width+1];
+			int[] neC=new int[width+1];
+			if(start>0){
+				for(int j=0;j<width;j++){
+					nC[j]=countBlack(j,start-1,0,-1);
+					nwC[j+1]=countBlack(j,start-1,-1,-1);
+					neC[j]=countBlack(j,start-1,1,-1);
+				}
+			}
+			for(int i=start, ind=start*width;i<end;i++){
+				int wC=0;
+				int nwCp=0;
+				int rows=i-start;
+				for(int j=0;j<width;j++,ind++){
+					if(pixels[ind]==0){
+						++wC;
+						++nC[j];
+						int tmp=nwC[j+1];
+						nwC[j+1]=nwCp+1;
+						nwCp=tmp;
+						neC[j]=neC[j+1]+1;
+					}else{
+						if(wC>0){
+							update(thicknessH,ind-1,1,wC,wC,VERTICAL,HORIZONTAL);
+							wC=0;
 						}
-						wC=0;
-					}
-					if(nC[j]>0){
-						int t=nC[j];
-						for(int k=1, ind0=ind-width;k<=nC[j];k++,ind0-=width){
-							if((direction[ind0]&3)==0||t<thicknessH[ind0]){
-								direction[ind0]=(byte)((direction[ind0]&~VERTICAL)|HORIZONTAL);
-								thicknessH[ind0]=(short)t;
-							}
+						if(nC[j]>0){
+							update(thicknessH,ind-width,width,Math.min(nC[j],rows),nC[j],HORIZONTAL,VERTICAL);
+							nC[j]=0;
 						}
-						nC[j]=0;
-					}
-					if(nwCp>0){
-						int t=nwCp;
-						int d=width+1;
-						for(int k=1, ind0=ind-d;k<=t;k++,ind0-=d){
-							if((direction[ind0]&12)==0||t<thicknessS[ind0]){
-								direction[ind0]=(byte)((direction[ind0]&~PRESS)|THROW);
-								thicknessS[ind0]=(short)t;
-							}
+						if(nwCp>0){
+							update(thicknessS,ind-width-1,width+1,Math.min(nwCp,rows),nwCp,THROW,PRESS);
 						}
-					}
-					nwCp=nwC[j+1];
-					nwC[j+1]=0;
-					if(neC[j+1]>0){
-						int t=neC[j+1];
-						int d=width-1;
-						for(int k=1, ind0=ind-d;k<=t;k++,ind0-=d){
-							if((direction[ind0]&12)==0||t<thicknessS[ind0]){
-								direction[ind0]=(byte)((direction[ind0]&~THROW)|PRESS);
-								thicknessS[ind0]=(short)t;
-							}
+						nwCp=nwC[j+1];
+						nwC[j+1]=0;
+						if(neC[j+1]>0){
+							update(thicknessS,ind-width+1,width-1,Math.min(neC[j+1],rows),neC[j+1],PRESS,THROW);
 						}
+						neC[j]=0;
+					}
+				}
+			}
+			if(end<height){
+				finish(start,end,nC,nwC,neC);
+			}
+		}
+		/**
+		 * Record runs leaving the strip in the order they end
+		 */
+		private void finish(int start,int end,int[] nC,int[] nwC,int[] neC){
+			int rows=end-start, last=(end-1)*width;
+			long[] diagonals=new long[width*2];
+			int count=0;
+			for(int j=0;j<width;j++){
+				if(nC[j]>0){
+					int rest=countBlack(j,end,0,1);
+					if(end+rest<height){
+						update(thicknessH,last+j,width,Math.min(nC[j],rows),nC[j]+rest,HORIZONTAL,VERTICAL);
 					}
-					neC[j]=0;
+				}
+				if(nwC[j+1]>0){
+					int rest=countBlack(j+1,end,1,1);
+					if(end+rest<height&&j+1+rest<width){
+						diagonals[count++]=((long)(end+rest)*width+j+1+rest)*2;
+					}
+				}
+				if(neC[j]>0){
+					int rest=countBlack(j-1,end,-1,1);
+					if(end+rest<height&&j-1-rest>=0){
+						diagonals[count++]=((long)(end+rest)*width+j-1-rest)*2+1;
+					}
+				}
+			}
+			Arrays.sort(diagonals,0,count);
+			for(int k=0;k<count;k++){
+				long ending=diagonals[k]/2;
+				int distance=(int)(ending/width)-(end-1), x=(int)(ending%width);
+				if(diagonals[k]%2==0){
+					int j=x-distance;
+					update(thicknessS,last+j,width+1,Math.min(nwC[j+1],rows),nwC[j+1]+distance-1,THROW,PRESS);
+				}else{
+					int j=x+distance;
+					update(thicknessS,last+j,width-1,Math.min(neC[j],rows),neC[j]+distance-1,PRESS,THROW);
+				}
+			}
+		}
+		/**
+		 * Count black pixels from a given one in a direction
+		 */
+		private int countBlack(int x,int y,int dx,int dy){
+			int count=0;
+			for(;x>=0&&x<width&&y>=0&&y<height&&pixels[y*width+x]==0;x+=dx,y+=dy){
+				++count;
+			}
+			return count;
+		}
+		/**
+		 * Record a run of length t on count pixels from a given index
+		 * backward
+		 */
+		private void update(short[] thickness,int ind,int step,int count,int t,byte set,byte clear){
+			int mask=set|clear;
+			for(int k=0;k<count;k++,ind-=step){
+				if((direction[ind]&mask)==0||t<thickness[ind]){
+					direction[ind]=(byte)((direction[ind]&~clear)|set);
+					thickness[ind]=(short)t;
 				}
 			}
 		}
-		return new StrokeSpace(direction,thicknessH,thicknessS,width,height);
 	}
 	/**
 	 * Visualize stroke direction in colored image
@@ -15,6 +15,7 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 package cc.chungkwong.mathocr.offline.extractor;
+import cc.chungkwong.mathocr.*;
 import cc.chungkwong.mathocr.common.*;
 import cc.chungkwong.mathocr.offline.*;
 import cc.chungkwong.mathocr.offline.extractor.orderer.*;
@@ -33,6 +34,7 @@ public class Extractor implements OfflineRecognizer{
 	 * MyScript based offline recognizer
 	 */
 	private final Preprocessor preprocessor;
+	private final Rescaler rescaler;
 	private final SkeletonTracer tracer;
 	private final GraphTracer graphTracer;
 	private final Orderer orderer;
@@ -43,7 +45,7 @@ public class Extractor implements OfflineRecognizer{
 	 * @param recognizer
 	 */
 	public Extractor(OnlineRecognizer recognizer){
-		this(new CombinedPreprocessor(),
+		this(new CombinedPreprocessor(),Settings.DEFAULT.getBoolean("AUTO_RESCALE")?new Rescaler():null,
 				//			new CombinedPreprocessor(Arrays.asList(new ToGrayscale(false),new OtsuBinarizer())),
 				//			new CombinedPreprocessor(Arrays.asList(new ToGrayscale(false),new FixedBinarizer(195))),
 				new ThinTracer(),new GreedyGraphTracer(),new CutOrderer(),recognizer);
@@ -58,7 +60,22 @@ public class Extractor implements OfflineRecognizer{
 	 * @param recognizer
 	 */
 	public Extractor(Preprocessor preprocessor,SkeletonTracer tracer,GraphTracer graphTracer,Orderer orderer,OnlineRecognizer recognizer){
+		this(preprocessor,null,tracer,graphTracer,orderer,recognizer);
+	}
+	/**
+	 * Create a offline recognizer
+	 *
+	 * @param preprocessor
+	 * @param rescaler used to downscale images with thick strokes before
+	 * preprocessing, null if images should not be rescaled
+	 * @param tracer
+	 * @param graphTracer
+	 * @param orderer
+	 * @param recognizer
+	 */
+	public Extractor(Preprocessor preprocessor,Rescaler rescaler,SkeletonTracer tracer,GraphTracer graphTracer,Orderer orderer,OnlineRecognizer recognizer){
 		this.preprocessor=preprocessor;
+		this.rescaler=rescaler;
 		this.tracer=tracer;
 		this.graphTracer=graphTracer;
 		this.orderer=orderer;
@@ -71,6 +88,13 @@ public class Extractor implements OfflineRecognizer{
 	public Preprocessor getPreprocessor(){
 		return preprocessor;
 	}
+	/**
+	 *
+	 * @return rescaler or null if images are not rescaled
+	 */
+	public Rescaler getRescaler(){
+		return rescaler;
+	}
 	/**
 	 *
 	 * @return skeleton tracer
@@ -115,7 +139,18 @@ public class Extractor implements OfflineRecognizer{
 	 * @return binary image
 	 */
 	public Bitmap preprocess(BufferedImage image){
-		return new Bitmap(preprocessor.apply(image,true));
+		return preprocess(image,new PreprocessContext(image));
+	}
+	/**
+	 * Preprocess a image
+	 *
+	 * @param image the image
+	 * @param context context to hold statistics of the image
+	 * @return binary image
+	 */
+	public Bitmap preprocess(BufferedImage image,PreprocessContext context){
+		preprocessor.apply(image,true,context);
+		return context.getBitmap();
 	}
 	/**
 	 * Extract strokes from a image
@@ -125,7 +160,20 @@ public class Extractor implements OfflineRecognizer{
 	 * @return the strokes
 	 */
 	public TraceList extract(BufferedImage image,boolean reorder){
-		TraceList list=graphTracer.trace(tracer.trace(preprocess(image)));
+		int width=image.getWidth(), height=image.getHeight();
+		double scale=rescaler!=null?rescaler.getScale(image):1.0;
+		if(scale<1.0){
+			image=rescaler.rescale(image,scale);
+		}
+		PreprocessContext context=new PreprocessContext(image);
+		preprocess(image,context);
+		TraceList list=graphTracer.trace(tracer.trace(context));
+		if(context.getOffsetX()!=0||context.getOffsetY()!=0){
+			list=list.translate(context.getOffsetX(),context.getOffsetY());
+		}
+		if(scale<1.0){
+			list=list.scale((double)width/image.getWidth(),(double)height/image.getHeight());
+		}
 		if(reorder){
 			list=orderer.order(list);
 		}
@@ -16,6 +16,7 @@
  */
 package cc.chungkwong.mathocr.offline.extractor.tracer;
 import cc.chungkwong.mathocr.offline.*;
+import cc.chungkwong.mathocr.offline.preprocessor.*;
 /**
  * Skeleton graph constructor
  *
@@ -29,4 +30,14 @@ public interface SkeletonTracer{
 	 * @return the graph
 	 */
 	Graph<Junction,Segment> trace(Bitmap bitmap);
+	/**
+	 * Construct skeleton graph of the bitmap of a context, cached statistics
+	 * can be used
+	 *
+	 * @param context context of the preprocessed image
+	 * @return the graph
+	 */
+	default Graph<Junction,Segment> trace(PreprocessContext context){
+		return trace(context.getBitmap());
+	}
 }
@@ -19,29 +19,45 @@ import cc.chungkwong.mathocr.offline.*;
 import cc.chungkwong.mathocr.offline.preprocessor.*;
 import cc.chungkwong.mathocr.online.*;
 import java.util.*;
+import java.util.function.*;
 /**
  * Skeleton tracer that use thinning
  *
  * @author Chan Chung Kwong
  */
 public class ThinTracer implements SkeletonTracer{
+	private static final byte ERASED=(byte)0x80;
 	@Override
 	public Graph<Junction,Segment> trace(Bitmap image){
 		Graph<Junction,Segment> graph=buildRawGraph(image);
 		simplifyGraph(graph);
 		return graph;
 	}
+	@Override
+	public Graph<Junction,Segment> trace(PreprocessContext context){
+		Graph<Junction,Segment> graph=buildRawGraph(context.getBitmap());
+		context.invalidate();
+		simplifyGraph(graph);
+		return graph;
+	}
 	public static Graph<Junction,Segment> buildRawGraph(Bitmap image){
-		StrokeWidthTransform.StrokeSpace strokeSpace=StrokeWidthTransform.transform(image);
-		int length=strokeSpace.getThicknessH().length;
-		int[] thicknessSq=new int[length];
-		for(int i=0;i<length;i++){
-			thicknessSq[i]=Math.min(square(strokeSpace.getThicknessH()[i]),2*square(strokeSpace.getThicknessS()[i]));
+		//deleted pixels are marked, so that thickness is computed on demand at the skeleton without a copy of the image
+		Thinning.thin(image,ERASED);//FIXME Changed input
+		int width=image.getWidth();
+		IntUnaryOperator thicknessSq=(ind)->{
+			int x=ind%width, y=ind/width;
+			return Math.min(square(StrokeWidthTransform.getThicknessH(image,x,y,ERASED)),2*square(StrokeWidthTransform.getThicknessS(image,x,y,ERASED)));
+		};
+		Graph<Junction,Segment> graph=buildRawGraph(image,thicknessSq);
+		byte[] pixels=image.getData();
+		for(int i=0;i<pixels.length;i++){
+			if(pixels[i]==ERASED){
+				pixels[i]=(byte)0xFF;
+			}
 		}
-		Thinning.thin(image);//FIXME Changed input
-		return buildRawGraph(image,thicknessSq);
+		return graph;
 	}
-	private static Graph<Junction,Segment> buildRawGraph(Bitmap bitmap,int[] thicknessSq){
+	private static Graph<Junction,Segment> buildRawGraph(Bitmap bitmap,IntUnaryOperator thicknessSq){
 		int width=bitmap.getWidth();
 		int height=bitmap.getHeight();
 		List<Segment> segments=new ArrayList<>();
@@ -51,7 +67,7 @@ public class ThinTracer implements SkeletonTracer{
 		followJoint(index,vertexs,bitmap,thicknessSq);
 		return buildRawGraph(segments,vertexs);
 	}
-	private static void followEdge(Component[] index,List<Segment> edges,Bitmap bitmap,int[] thicknessSq){
+	private static void followEdge(Component[] index,List<Segment> edges,Bitmap bitmap,IntUnaryOperator thicknessSq){
 		int width=bitmap.getWidth();
 		byte[] bits=bitmap.getData();
 		for(int found=0;found<bits.length;found++){
@@ -91,8 +107,8 @@ public class ThinTracer implements SkeletonTracer{
 						last=tmp;
 					}
 				}
-				//tracing.setThick(points.stream().mapToInt((p)->thicknessSq[p.toIndex(width)]).sorted().skip(points.size()/2).findFirst().getAsInt());
-				tracing.setThick((int)(points.stream().mapToInt((p)->thicknessSq[p.toIndex(width)]).average().getAsDouble()+0.5));
+				//tracing.setThick(points.stream().mapToInt((p)->thicknessSq.applyAsInt(p.toIndex(width))).sorted().skip(points.size()/2).findFirst().getAsInt());
+				tracing.setThick((int)(points.stream().mapToInt((p)->thicknessSq.applyAsInt(p.toIndex(width))).average().getAsDouble()+0.5));
 				tracing.updateAngles();
 				edges.add(tracing);
 			}
@@ -140,7 +156,7 @@ public class ThinTracer implements SkeletonTracer{
 		}
 		return neighbors;
 	}
-	private static void followJoint(Component[] index,Map<Junction,Set<Segment>> neighborhood,Bitmap bitmap,int[] thicknessSq){
+	private static void followJoint(Component[] index,Map<Junction,Set<Segment>> neighborhood,Bitmap bitmap,IntUnaryOperator thicknessSq){
 		int width=bitmap.getWidth();
 		int[] offsets={1,-width+1,-width,-width-1,-1,width-1,width,width+1};
 		byte[] bits=bitmap.getData();
@@ -150,7 +166,7 @@ public class ThinTracer implements SkeletonTracer{
 			}
 			Junction tracing=new Junction(new Trace(new LinkedList<>()));
 			HashSet<Segment> neighbors=new HashSet<>();
-			int thick=thicknessSq[found];
+			int thick=thicknessSq.applyAsInt(found);
 			neighborhood.put(tracing,neighbors);
 			List<TracePoint> points=tracing.getTrace().getPoints();
 			points.add(TracePoint.fromIndex(found,width));
@@ -166,8 +182,9 @@ public class ThinTracer implements SkeletonTracer{
 							points.add(TracePoint.fromIndex(curr,width));
 							index[curr]=tracing;
 							toTrace.push(curr);
-							if(thicknessSq[curr]>thick){
-								thick=thicknessSq[curr];
+							int thickness=thicknessSq.applyAsInt(curr);
+							if(thickness>thick){
+								thick=thickness;
 							}
 						}else if(index[curr] instanceof Segment){
 							neighbors.add((Segment)index[curr]);
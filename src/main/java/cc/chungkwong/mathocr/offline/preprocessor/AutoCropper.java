@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2019 Chan Chung Kwong
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.chungkwong.mathocr.offline.preprocessor;
+import cc.chungkwong.mathocr.common.*;
+import cc.chungkwong.mathocr.offline.*;
+import java.awt.image.*;
+import java.util.*;
+/**
+ * Crop the image to the region containing ink, which is located on a
+ * decimated copy of the image. The offset of the cropped image is recorded
+ * in the context, so that coordinates can be mapped back.
+ *
+ * @author Chan Chung Kwong
+ */
+public class AutoCropper implements Preprocessor{
+	private static final int SCALE=4;
+	private final int margin;
+	/**
+	 * Construct a AutoCropper with default margin
+	 */
+	public AutoCropper(){
+		this(32);
+	}
+	/**
+	 * Construct a AutoCropper
+	 *
+	 * @param margin number of pixels to be kept around the ink
+	 */
+	public AutoCropper(int margin){
+		this.margin=margin;
+	}
+	/**
+	 *
+	 * @return number of pixels to be kept around the ink
+	 */
+	public int getMargin(){
+		return margin;
+	}
+	/**
+	 * Locate the ink
+	 *
+	 * @param image the image
+	 * @return bounding box of the ink with margin, or null if it cannot be
+	 * found
+	 */
+	public BoundBox getContentBox(BufferedImage image){
+		int width=image.getWidth(), height=image.getHeight();
+		int w=width/SCALE, h=height/SCALE;
+		if(w==0||h==0){
+			return null;
+		}
+		byte[] small=new byte[w*h];
+		int[] row=new int[width], sums=new int[w];
+		byte[] gray=new byte[width];
+		PixelKernel kernel=PixelKernel.getDefault();
+		GrayView pixels=image.getType()==BufferedImage.TYPE_BYTE_GRAY?GrayView.of(image):null;
+		for(int i=0, ind=0;i<h;i++){
+			Arrays.fill(sums,0);
+			for(int k=0;k<SCALE;k++){
+				byte[] data;
+				int start;
+				if(pixels!=null){
+					data=pixels.getData();
+					start=pixels.getIndex(0,i*SCALE+k);
+				}else{
+					image.getRGB(0,i*SCALE+k,width,1,row,0,width);
+					kernel.toGrayscale(row,gray,0,width,316,624,84);
+					data=gray;
+					start=0;
+				}
+				for(int j=0;j<w*SCALE;j++){
+					sums[j/SCALE]+=data[start+j]&0xFF;
+				}
+			}
+			for(int j=0;j<w;j++,ind++){
+				small[ind]=(byte)(sums[j]/(SCALE*SCALE));
+			}
+		}
+		new OtsuBinarizer().preprocess(small,small,w,h);
+		if(kernel.countAtMost(small,0)>small.length/2){
+			return null;
+		}
+		ComponentPool pool=new ComponentPool(small,w,h);
+		pool.filterNoise(w,h);
+		if(pool.getComponents().isEmpty()){
+			return null;
+		}
+		BoundBox box=pool.getBoundBox();
+		return new BoundBox(Math.max(box.getLeft()*SCALE-margin,0),Math.min((box.getRight()+1)*SCALE-1+margin,width-1),
+				Math.max(box.getTop()*SCALE-margin,0),Math.min((box.getBottom()+1)*SCALE-1+margin,height-1));
+	}
+	/**
+	 * Perform preprocess operation. The position of the cropped region is
+	 * not reported, use the variant with a context or getContentBox if
+	 * coordinates have to be mapped back to the input image.
+	 *
+	 * @param image input image
+	 * @param inplace ignored
+	 * @return a view of the region containing ink
+	 */
+	@Override
+	public BufferedImage apply(BufferedImage image,boolean inplace){
+		BoundBox box=getContentBox(image);
+		return box!=null?crop(image,box):image;
+	}
+	@Override
+	public BufferedImage apply(BufferedImage image,boolean inplace,PreprocessContext context){
+		BoundBox box=getContentBox(image);
+		if(box==null||(box.getWidth()==image.getWidth()&&box.getHeight()==image.getHeight())){
+			return image;
+		}
+		BufferedImage result=crop(image,box);
+		context.setImage(result);
+		context.translate(box.getLeft(),box.getTop());
+		return result;
+	}
+	private static BufferedImage crop(BufferedImage image,BoundBox box){
+		return image.getSubimage(box.getLeft(),box.getTop(),box.getWidth(),box.getHeight());
+	}
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2019 Chan Chung Kwong
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.chungkwong.mathocr.offline.preprocessor;
+import cc.chungkwong.mathocr.offline.*;
+import java.awt.image.*;
+import java.util.*;
+/**
+ * Rotator for binary images. The rotation is decomposed into three shears, a
+ * horizontal one, a vertical one and a horizontal one, each of them moves rows
+ * or columns by whole pixels, so black pixels are neither lost nor duplicated
+ * and no rebinarization is needed. Only run lengths of rows are processed.
+ *
+ * @author Chan Chung Kwong
+ */
+public class BinaryRotator implements Preprocessor{
+	private final double angle, tan, sin;
+	/**
+	 * Construct a BinaryRotator
+	 *
+	 * @param angle the angle from current x-axis to document
+	 * baseline(clockwise), should be between -PI/2 and PI/2
+	 */
+	public BinaryRotator(double angle){
+		this.angle=angle;
+		this.tan=Math.tan(angle/2);
+		this.sin=Math.sin(angle);
+	}
+	/**
+	 * @return the angle
+	 */
+	public double getAngle(){
+		return angle;
+	}
+	/**
+	 * Rotate a binary image anti-clockwise by skew angle
+	 *
+	 * @param image binary image of type TYPE_BYTE_GRAY, black pixels are 0
+	 * @param inplace ignored since size of the image changes
+	 * @return rotated image
+	 */
+	@Override
+	public BufferedImage apply(BufferedImage image,boolean inplace){
+		Bitmap bitmap=rotate(new Bitmap(BinaryView.of(image).toArray(),image.getWidth(),image.getHeight()));
+		BufferedImage result=new BufferedImage(bitmap.getWidth(),bitmap.getHeight(),BufferedImage.TYPE_BYTE_GRAY);
+		System.arraycopy(bitmap.getData(),0,((DataBufferByte)result.getRaster().getDataBuffer()).getData(),0,bitmap.getData().length);
+		return result;
+	}
+	/**
+	 * Rotate a bitmap anti-clockwise by skew angle
+	 *
+	 * @param bitmap the bitmap
+	 * @return rotated bitmap
+	 */
+	public Bitmap rotate(Bitmap bitmap){
+		int width=bitmap.getWidth(), height=bitmap.getHeight();
+		byte[] data=bitmap.getData();
+		Rows rows=new Rows(width,height,0,new int[height+1],new int[height]);
+		for(int pass=0;pass<2;pass++){
+			for(int i=0, ind=0;i<height;i++,ind+=width){
+				for(int j=0;j<width;j++){
+					if(data[ind+j]==0){
+						int k=j+1;
+						while(k<width&&data[ind+k]==0){
+							++k;
+						}
+						rows.add(i,j,k);
+						j=k;
+					}
+				}
+			}
+			rows.allocate();
+		}
+		rows=rotate(rows);
+		byte[] pixels=new byte[rows.width*rows.height];
+		Arrays.fill(pixels,(byte)0xFF);
+		for(int i=0;i<rows.height;i++){
+			for(int r=rows.offsets[i], end=r+rows.counts[i]*2;r<end;r+=2){
+				Arrays.fill(pixels,i*rows.width+rows.runs[r],i*rows.width+rows.runs[r+1],(byte)0x00);
+			}
+		}
+		return new Bitmap(pixels,rows.width,rows.height);
+	}
+	/**
+	 * Rotate connected components anti-clockwise by skew angle, the
+	 * components are recomputed since connectivity may change
+	 *
+	 * @param pool the components
+	 * @param width width of the image containing the components
+	 * @param height height of the image containing the components
+	 * @return the components in the rotated image
+	 */
+	public ComponentPool rotate(ComponentPool pool,int width,int height){
+		Rows rows=new Rows(width,height,0,new int[height+1],new int[height]);
+		for(int pass=0;pass<2;pass++){
+			for(ConnectedComponent component:pool.getComponents()){
+				for(int r=0;r<component.getRunLengthCount();r++){
+					rows.add(component.getRunY(r),component.getRunX(r),component.getRunX(r)+component.getRunCount(r)+1);
+				}
+			}
+			rows.allocate();
+		}
+		rows.sort();
+		rows=rotate(rows);
+		ComponentPool.Labeller labeller=new ComponentPool.Labeller(rows.width);
+		int[] buf=new int[rows.width+1];
+		for(int i=0;i<rows.height;i++){
+			System.arraycopy(rows.runs,rows.offsets[i],buf,0,rows.counts[i]*2);
+			labeller.acceptRuns(i,buf,rows.counts[i]);
+		}
+		return labeller.finish();
+	}
+	private int shiftX(int y){
+		return (int)Math.round(tan*y);
+	}
+	private int shiftY(int x){
+		return (int)Math.round(-sin*x);
+	}
+	private Rows rotate(Rows source){
+		int width=source.width, height=source.height;
+		//Horizontal shear
+		int minX=Integer.MAX_VALUE, maxX=Integer.MIN_VALUE;
+		for(int i=0;i<height;i++){
+			int shift=shiftX(i);
+			minX=Math.min(minX,shift);
+			maxX=Math.max(maxX,width-1+shift);
+			for(int r=source.offsets[i], end=r+source.counts[i]*2;r<end;r++){
+				source.runs[r]+=shift;
+			}
+		}
+		//Bounding box of the rotated image
+		int[] bandOf=new int[maxX-minX+1], bandEnd=new int[maxX-minX+2], bandShift=new int[maxX-minX+1];
+		int bands=0;
+		int left=Integer.MAX_VALUE, right=Integer.MIN_VALUE, top=Integer.MAX_VALUE, bottom=Integer.MIN_VALUE;
+		for(int x=minX;x<=maxX;x++){
+			int shift=shiftY(x);
+			if(bands==0||bandShift[bands-1]!=shift){
+				bandShift[bands++]=shift;
+			}
+			bandOf[x-minX]=bands-1;
+			bandEnd[bands-1]=x+1;
+			int lo=firstRow(height,x-width+1,x,true), hi=firstRow(height,x-width+1,x,false)-1;
+			if(lo<=hi){
+				top=Math.min(top,lo+shift);
+				bottom=Math.max(bottom,hi+shift);
+				int s1=shiftX(lo+shift), s2=shiftX(hi+shift);
+				left=Math.min(left,x+Math.min(s1,s2));
+				right=Math.max(right,x+Math.max(s1,s2));
+			}
+		}
+		//Vertical shear
+		Rows target=new Rows(right-left+1,bottom-top+1,top,new int[bottom-top+2],new int[bottom-top+1]);
+		for(int pass=0;pass<2;pass++){
+			for(int k=0;k<height;k++){
+				int i=sin>0?k:height-1-k;
+				for(int r=source.offsets[i], end=r+source.counts[i]*2;r<end;r+=2){
+					for(int x=source.runs[r], stop=source.runs[r+1];x<stop;){
+						int band=bandOf[x-minX], to=Math.min(stop,bandEnd[band]);
+						target.add(i+bandShift[band],x,to);
+						x=to;
+					}
+				}
+			}
+			target.allocate();
+		}
+		//Horizontal shear
+		for(int i=0;i<target.height;i++){
+			int shift=shiftX(i+top)-left;
+			for(int r=target.offsets[i], end=r+target.counts[i]*2;r<end;r++){
+				target.runs[r]+=shift;
+			}
+		}
+		return target;
+	}
+	/**
+	 * Binary search on the monotonic shifts of the first horizontal shear, the
+	 * rows covering a column are those with shift between min and max
+	 *
+	 * @return the first row covering the column if first, otherwise the row
+	 * after the last one covering the column
+	 */
+	private int firstRow(int height,int min,int max,boolean first){
+		int lo=0, hi=height;
+		while(lo<hi){
+			int mid=(lo+hi)>>>1;
+			int shift=shiftX(mid);
+			boolean after;
+			if(tan>=0){
+				after=first?shift>=min:shift>max;
+			}else{
+				after=first?shift<=max:shift<min;
+			}
+			if(after){
+				hi=mid;
+			}else{
+				lo=mid+1;
+			}
+		}
+		return lo;
+	}
+	/**
+	 * Runs of black pixels grouped by rows, filled by counting the runs in the
+	 * first pass and storing them in the second pass
+	 */
+	private static final class Rows{
+		final int width, height, top;
+		final int[] offsets, counts;
+		int[] runs;
+		Rows(int width,int height,int top,int[] offsets,int[] counts){
+			this.width=width;
+			this.height=height;
+			this.top=top;
+			this.offsets=offsets;
+			this.counts=counts;
+		}
+		void add(int row,int start,int end){
+			int i=row-top;
+			if(runs==null){
+				++counts[i];
+			}else{
+				int last=offsets[i]+counts[i]*2-1;
+				if(counts[i]>0&&runs[last]==start){
+					runs[last]=end;
+				}else{
+					runs[last+1]=start;
+					runs[last+2]=end;
+					++counts[i];
+				}
+			}
+		}
+		void allocate(){
+			if(runs!=null){
+				return;
+			}
+			for(int i=0;i<height;i++){
+				offsets[i+1]=offsets[i]+counts[i]*2;
+			}
+			runs=new int[offsets[height]];
+			Arrays.fill(counts,0);
+		}
+		void sort(){
+			int[] starts=new int[width+1], ends=new int[width+1];
+			for(int i=0;i<height;i++){
+				int offset=offsets[i], count=counts[i];
+				for(int r=0;r<count;r++){
+					starts[r]=runs[offset+r*2];
+					ends[r]=runs[offset+r*2+1];
+				}
+				Arrays.sort(starts,0,count);
+				Arrays.sort(ends,0,count);
+				for(int r=0;r<count;r++){
+					runs[offset+r*2]=starts[r];
+					runs[offset+r*2+1]=ends[r];
+				}
+			}
+		}
+	}
+}
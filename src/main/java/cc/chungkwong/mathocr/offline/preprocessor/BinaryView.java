@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2019 Chan Chung Kwong
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.chungkwong.mathocr.offline.preprocessor;
+import java.awt.image.*;
+/**
+ * View of a binary image where black pixels are marked 0
+ *
+ * @author Chan Chung Kwong
+ */
+public class BinaryView extends GrayView{
+	/**
+	 * Create a view of a whole array
+	 *
+	 * @param data the pixels
+	 * @param width width
+	 * @param height height
+	 */
+	public BinaryView(byte[] data,int width,int height){
+		super(data,width,height);
+	}
+	/**
+	 * Create a view
+	 *
+	 * @param data the backing array
+	 * @param offset index of the top-left pixel
+	 * @param stride difference between indices of vertically adjacent pixels
+	 * @param width width
+	 * @param height height
+	 */
+	public BinaryView(byte[] data,int offset,int stride,int width,int height){
+		super(data,offset,stride,width,height);
+	}
+	/**
+	 * Create a view of the pixels of a binary image
+	 *
+	 * @param image the image, usually of type TYPE_BYTE_GRAY
+	 * @return the view or null if the image is not stored as one byte per
+	 * pixel
+	 */
+	public static BinaryView of(BufferedImage image){
+		GrayView view=GrayView.of(image);
+		return view!=null?new BinaryView(view.getData(),view.getOffset(),view.getStride(),view.getWidth(),view.getHeight()):null;
+	}
+	/**
+	 * Create a binary view of a part of this view sharing the same pixels
+	 *
+	 * @param x the x coordinate of the top-left pixel of the part
+	 * @param y the y coordinate of the top-left pixel of the part
+	 * @param width the width of the part
+	 * @param height the height of the part
+	 * @return the view
+	 */
+	@Override
+	public BinaryView getSubview(int x,int y,int width,int height){
+		GrayView view=super.getSubview(x,y,width,height);
+		return new BinaryView(view.getData(),view.getOffset(),view.getStride(),width,height);
+	}
+	/**
+	 * Check if a pixel is black
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @return black or not
+	 */
+	public boolean isBlack(int x,int y){
+		return getData()[getIndex(x,y)]==0;
+	}
+	/**
+	 * Extract runs of black pixels in a row
+	 *
+	 * @param row the row
+	 * @param runs the buffer with at least width+1 elements to receive start
+	 * and end(exclusive) of the runs
+	 * @return number of runs
+	 */
+	public int getRuns(int row,int[] runs){
+		byte[] data=getData();
+		int width=getWidth(), base=getIndex(0,row), count=0;
+		for(int j=0;j<width;j++){
+			if(data[base+j]==0){
+				int k=j+1;
+				while(k<width&&data[base+k]==0){
+					++k;
+				}
+				runs[count*2]=j;
+				runs[count*2+1]=k;
+				++count;
+				j=k;
+			}
+		}
+		return count;
+	}
+}
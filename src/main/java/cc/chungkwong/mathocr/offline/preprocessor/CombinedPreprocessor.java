@@ -24,8 +24,13 @@ import java.util.*;
  */
 public class CombinedPreprocessor implements Preprocessor{
 	private final List<Preprocessor> preprocessors;
+	private final boolean fused;
 	public CombinedPreprocessor(){
 		preprocessors=new ArrayList<>();
+		fused=Settings.DEFAULT.getBoolean("FUSED_PREPROCESS");
+		if(Settings.DEFAULT.getBoolean("AUTO_CROP")==true){
+			preprocessors.add(new AutoCropper());
+		}
 		preprocessors.add(new ToGrayscale());
 		if(Settings.DEFAULT.getBoolean("DETECT_INVERT")==true){
 			preprocessors.add(new Inverter(true));
@@ -57,7 +62,18 @@ public class CombinedPreprocessor implements Preprocessor{
 	 * @param preprocessors a sequence of preprocessors
 	 */
 	public CombinedPreprocessor(List<Preprocessor> preprocessors){
+		this(preprocessors,Settings.DEFAULT.getBoolean("FUSED_PREPROCESS"));
+	}
+	/**
+	 * Construct a CombinedPreprocessor
+	 *
+	 * @param preprocessors a sequence of preprocessors
+	 * @param fused if common sequences of preprocessors should be performed in
+	 * a single pass when possible
+	 */
+	public CombinedPreprocessor(List<Preprocessor> preprocessors,boolean fused){
 		this.preprocessors=preprocessors;
+		this.fused=fused;
 	}
 	/**
 	 * Perform preprocess operation
@@ -67,12 +83,28 @@ public class CombinedPreprocessor implements Preprocessor{
 	 */
 	@Override
 	public BufferedImage apply(BufferedImage image,boolean inplace){
-		Iterator<Preprocessor> iterator=preprocessors.iterator();
-		if(iterator.hasNext()){
-			image=iterator.next().apply(image,inplace);
-			while(iterator.hasNext()){
-				image=iterator.next().apply(image,true);
+		return apply(image,inplace,new PreprocessContext(image));
+	}
+	@Override
+	public BufferedImage apply(BufferedImage image,boolean inplace,PreprocessContext context){
+		for(int i=0;i<preprocessors.size();i++){
+			Preprocessor preprocessor=preprocessors.get(i);
+			if(fused&&preprocessor instanceof ToGrayscale){
+				int j=i+1;
+				MeanFilter meanFilter=null;
+				if(j<preprocessors.size()&&preprocessors.get(j) instanceof MeanFilter){
+					meanFilter=(MeanFilter)preprocessors.get(j++);
+				}
+				if(j<preprocessors.size()&&preprocessors.get(j) instanceof SauvolaBinarizer){
+					FusedPreprocessor fusion=new FusedPreprocessor((ToGrayscale)preprocessor,meanFilter,(SauvolaBinarizer)preprocessors.get(j));
+					if(fusion.isApplicable(image)){
+						preprocessor=fusion;
+						i=j;
+					}
+				}
 			}
+			image=preprocessor.apply(image,inplace,context);
+			inplace=true;
 		}
 		return image;
 	}
@@ -16,36 +16,61 @@
  */
 package cc.chungkwong.mathocr.offline.preprocessor;
 import java.util.*;
+import java.util.concurrent.*;
 /**
  *
  * @author Chan Chung Kwong
  */
 public class Dilation extends SimplePreprocessor{
-	private final int windowSize;
-	private final BitSet template;
+	private final StructuringElement element;
+	private final ForkJoinPool pool;
+	/**
+	 * Construct a Dilation
+	 *
+	 * @param template the structuring element as a square template in row
+	 * major order
+	 */
 	public Dilation(BitSet template){
-		this.template=template;
 		int size=1;
 		while(size*size<=template.size()){
 			size+=2;
 		}
-		this.windowSize=size-2;
+		this.element=StructuringElement.fromTemplate(template,size-2);
+		this.pool=null;
+	}
+	/**
+	 * Construct a Dilation with a rectangular structuring element
+	 *
+	 * @param width width of the rectangle
+	 * @param height height of the rectangle
+	 */
+	public Dilation(int width,int height){
+		this(StructuringElement.rectangle(width,height),null);
+	}
+	/**
+	 * Construct a Dilation
+	 *
+	 * @param element the structuring element
+	 * @param pool the pool to be used, null for sequential processing
+	 */
+	public Dilation(StructuringElement element,ForkJoinPool pool){
+		this.element=element;
+		this.pool=pool;
+	}
+	/**
+	 * @return the structuring element
+	 */
+	public StructuringElement getElement(){
+		return element;
+	}
+	/**
+	 * @return the pool used or null if sequential
+	 */
+	public ForkJoinPool getPool(){
+		return pool;
 	}
 	@Override
 	public void preprocess(byte[] from,byte[] to,int width,int height){
-		int r=windowSize/2;
-		for(int i=r;i<height-r;i++){
-			for(int j=r, ind=i*width+j;j<width-r;j++,ind++){
-				if(from[ind]==0){
-					for(int k=-r, tind=0;k<=r;k++){
-						for(int l=-r;l<=r;l++,tind++){
-							if(template.get(tind)){
-								to[ind+k*width+l]=0x00;
-							}
-						}
-					}
-				}
-			}
-		}
+		element.dilate(from,to,width,height,pool);
 	}
 }
@@ -43,4 +43,8 @@ public class FixedBinarizer extends GlobalBinarizer{
 	protected int getThrehold(byte[] pixels){
 		return threhold;
 	}
+	@Override
+	protected int getThrehold(PreprocessContext context,GrayView pixels){
+		return threhold;
+	}
 }
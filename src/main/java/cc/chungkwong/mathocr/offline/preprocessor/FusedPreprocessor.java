@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2019 Chan Chung Kwong
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.chungkwong.mathocr.offline.preprocessor;
+import java.awt.image.*;
+/**
+ * Grayscale conversion, optional mean filter and Sauvola's thresholding
+ * performed in a single pass over the input image, the result is the same as
+ * applying them one by one but no intermediate image is created
+ *
+ * @author Chan Chung Kwong
+ */
+public class FusedPreprocessor implements Preprocessor{
+	private final ToGrayscale grayscale;
+	private final MeanFilter meanFilter;
+	private final SauvolaBinarizer binarizer;
+	/**
+	 * Construct a FusedPreprocessor
+	 *
+	 * @param grayscale the grayscale converter
+	 * @param meanFilter the mean filter, null if not needed
+	 * @param binarizer the binarizer
+	 */
+	public FusedPreprocessor(ToGrayscale grayscale,MeanFilter meanFilter,SauvolaBinarizer binarizer){
+		this.grayscale=grayscale;
+		this.meanFilter=meanFilter;
+		this.binarizer=binarizer;
+	}
+	/**
+	 * Check if a image can be processed in a single pass
+	 *
+	 * @param image input image
+	 * @return if a single pass is possible
+	 */
+	public boolean isApplicable(BufferedImage image){
+		return grayscale.getRowSource(image)!=null;
+	}
+	@Override
+	public BufferedImage apply(BufferedImage image,boolean inplace){
+		RowSource source=grayscale.getRowSource(image);
+		if(source==null){
+			image=grayscale.apply(image,inplace);
+			if(meanFilter!=null){
+				image=meanFilter.apply(image,true);
+			}
+			return binarizer.apply(image,true);
+		}
+		int width=image.getWidth(), height=image.getHeight();
+		if(meanFilter!=null){
+			source=meanFilter.getRowSource(source,width,height);
+		}
+		BufferedImage result;
+		if(inplace&&image.getType()==BufferedImage.TYPE_BYTE_GRAY){
+			result=image;
+		}else{
+			result=new BufferedImage(width,height,BufferedImage.TYPE_BYTE_GRAY);
+		}
+		WritableRaster raster=result.getRaster();
+		binarizer.preprocess(source,(row,buf)->raster.setDataElements(0,row,width,1,buf),width,height);
+		return result;
+	}
+}
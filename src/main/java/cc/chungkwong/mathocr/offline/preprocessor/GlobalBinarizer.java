@@ -22,11 +22,27 @@ package cc.chungkwong.mathocr.offline.preprocessor;
 public abstract class GlobalBinarizer extends SimplePreprocessor{
 	@Override
 	public void preprocess(byte[] from,byte[] to,int width,int height){
-		int lim=getThrehold(from);
-		int len=width*height;
-		for(int i=0;i<len;i++){
-			to[i]=(from[i]&0xFF)<=lim?0x00:(byte)0xff;
+		PixelKernel.getDefault().threshold(from,to,width*height,getThrehold(from));
+	}
+	@Override
+	protected boolean preprocess(byte[] from,byte[] to,int width,int height,PreprocessContext context){
+		PixelKernel.getDefault().threshold(from,to,width*height,getThrehold(context,from));
+		return true;
+	}
+	@Override
+	protected boolean preprocess(GrayView from,GrayView to,PreprocessContext context){
+		if(from.isCompact()&&to.isCompact()){
+			return super.preprocess(from,to,context);
+		}
+		int width=from.getWidth(), height=from.getHeight(), limit=getThrehold(context,from);
+		PixelKernel kernel=PixelKernel.getDefault();
+		byte[] row=new byte[width];
+		for(int i=0;i<height;i++){
+			from.fetch(i,row);
+			kernel.threshold(row,row,width,limit);
+			to.accept(i,row);
 		}
+		return true;
 	}
 	/*
 	 * Get the threhold value
@@ -34,4 +50,24 @@ public abstract class GlobalBinarizer extends SimplePreprocessor{
 	 * @return threhold value
 	 */
 	protected abstract int getThrehold(byte[] pixels);
+	/**
+	 * Get the threhold value, statistics in the context can be used
+	 *
+	 * @param context context of the input image
+	 * @param pixels pixel array of the input image
+	 * @return threhold value
+	 */
+	protected int getThrehold(PreprocessContext context,byte[] pixels){
+		return getThrehold(pixels);
+	}
+	/**
+	 * Get the threhold value of a view, statistics in the context can be used
+	 *
+	 * @param context context of the input image
+	 * @param pixels view of the input image
+	 * @return threhold value
+	 */
+	protected int getThrehold(PreprocessContext context,GrayView pixels){
+		return getThrehold(context,pixels.toArray());
+	}
 }
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2019 Chan Chung Kwong
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.chungkwong.mathocr.offline.preprocessor;
+import java.awt.image.*;
+import java.util.*;
+/**
+ * Gray levels of a rectangular region stored in a byte array, row y starts at
+ * offset+y*stride, so that a part of an image can be processed without being
+ * copied
+ *
+ * @author Chan Chung Kwong
+ */
+public class GrayView implements RowSource,RowSink{
+	private final byte[] data;
+	private final int offset, stride, width, height;
+	/**
+	 * Create a view of a whole array
+	 *
+	 * @param data the pixels
+	 * @param width width
+	 * @param height height
+	 */
+	public GrayView(byte[] data,int width,int height){
+		this(data,0,width,width,height);
+	}
+	/**
+	 * Create a view
+	 *
+	 * @param data the backing array
+	 * @param offset index of the top-left pixel
+	 * @param stride difference between indices of vertically adjacent pixels
+	 * @param width width
+	 * @param height height
+	 */
+	public GrayView(byte[] data,int offset,int stride,int width,int height){
+		this.data=data;
+		this.offset=offset;
+		this.stride=stride;
+		this.width=width;
+		this.height=height;
+	}
+	/**
+	 * Create a view of the pixels of a image
+	 *
+	 * @param image the image, usually of type TYPE_BYTE_GRAY
+	 * @return the view or null if the image is not stored as one byte per
+	 * pixel
+	 */
+	public static GrayView of(BufferedImage image){
+		WritableRaster raster=image.getRaster();
+		if(raster.getNumBands()!=1||!(raster.getDataBuffer() instanceof DataBufferByte)||!(raster.getSampleModel() instanceof ComponentSampleModel)){
+			return null;
+		}
+		ComponentSampleModel model=(ComponentSampleModel)raster.getSampleModel();
+		if(model.getPixelStride()!=1){
+			return null;
+		}
+		int stride=model.getScanlineStride();
+		int offset=raster.getDataBuffer().getOffset()+model.getBandOffsets()[0]
+				-raster.getSampleModelTranslateY()*stride-raster.getSampleModelTranslateX();
+		return new GrayView(((DataBufferByte)raster.getDataBuffer()).getData(),offset,stride,image.getWidth(),image.getHeight());
+	}
+	/**
+	 *
+	 * @return the backing array
+	 */
+	public byte[] getData(){
+		return data;
+	}
+	/**
+	 *
+	 * @return index of the top-left pixel in the backing array
+	 */
+	public int getOffset(){
+		return offset;
+	}
+	/**
+	 *
+	 * @return difference between indices of vertically adjacent pixels
+	 */
+	public int getStride(){
+		return stride;
+	}
+	/**
+	 *
+	 * @return width
+	 */
+	public int getWidth(){
+		return width;
+	}
+	/**
+	 *
+	 * @return height
+	 */
+	public int getHeight(){
+		return height;
+	}
+	/**
+	 * Get the index of a pixel in the backing array
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @return the index
+	 */
+	public int getIndex(int x,int y){
+		return offset+y*stride+x;
+	}
+	/**
+	 * Get a gray level
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @return the gray level
+	 */
+	public int get(int x,int y){
+		return data[offset+y*stride+x]&0xFF;
+	}
+	/**
+	 * Check if the backing array is exactly the pixels of the view in row
+	 * major order, so that the array can be used directly
+	 *
+	 * @return the result
+	 */
+	public boolean isCompact(){
+		return offset==0&&(stride==width||height<=1)&&data.length==width*height;
+	}
+	/**
+	 * Create a view of a part of this view sharing the same pixels
+	 *
+	 * @param x the x coordinate of the top-left pixel of the part
+	 * @param y the y coordinate of the top-left pixel of the part
+	 * @param width the width of the part
+	 * @param height the height of the part
+	 * @return the view
+	 */
+	public GrayView getSubview(int x,int y,int width,int height){
+		if(x<0||y<0||width<0||height<0||x+width>this.width||y+height>this.height){
+			throw new IndexOutOfBoundsException();
+		}
+		return new GrayView(data,getIndex(x,y),stride,width,height);
+	}
+	/**
+	 * Get the pixels in row major order
+	 *
+	 * @return the backing array if the view is compact, a copy otherwise
+	 */
+	public byte[] toArray(){
+		if(isCompact()){
+			return data;
+		}
+		byte[] pixels=new byte[width*height];
+		for(int i=0;i<height;i++){
+			System.arraycopy(data,offset+i*stride,pixels,i*width,width);
+		}
+		return pixels;
+	}
+	/**
+	 * Replace the pixels
+	 *
+	 * @param pixels the new pixels in row major order
+	 */
+	public void setPixels(byte[] pixels){
+		if(pixels==data&&isCompact()){
+			return;
+		}
+		for(int i=0;i<height;i++){
+			System.arraycopy(pixels,i*width,data,offset+i*stride,width);
+		}
+	}
+	/**
+	 * Set all pixels to the same gray level
+	 *
+	 * @param value the gray level
+	 */
+	public void fill(byte value){
+		for(int i=0, ind=offset;i<height;i++,ind+=stride){
+			Arrays.fill(data,ind,ind+width,value);
+		}
+	}
+	/**
+	 * Get the histogram of the gray levels
+	 *
+	 * @return the histogram
+	 */
+	public int[] histogram(){
+		if(isCompact()){
+			return PixelKernel.getDefault().histogram(data);
+		}
+		int[] histogram=new int[256];
+		for(int i=0, ind=offset;i<height;i++,ind+=stride){
+			for(int j=0;j<width;j++){
+				++histogram[data[ind+j]&0xFF];
+			}
+		}
+		return histogram;
+	}
+	/**
+	 * Copy a row of pixels
+	 *
+	 * @param row the index of the row
+	 * @param buf the buffer receiving the row
+	 */
+	@Override
+	public void fetch(int row,byte[] buf){
+		System.arraycopy(data,offset+row*stride,buf,0,width);
+	}
+	/**
+	 * Overwrite a row of pixels
+	 *
+	 * @param row the index of the row
+	 * @param buf the new pixels of the row
+	 */
+	@Override
+	public void accept(int row,byte[] buf){
+		System.arraycopy(buf,0,data,offset+row*stride,width);
+	}
+}
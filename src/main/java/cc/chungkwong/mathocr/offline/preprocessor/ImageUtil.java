@@ -29,19 +29,7 @@ public class ImageUtil{
 	 * @return integral image
 	 */
 	public static final long[][] getIntegralImage(byte[] pixels,int width,int height){
-		long[][] intImg=new long[height][width];
-		int ind=0;
-		intImg[0][0]=pixels[0]&0xFF;
-		for(int j=1;j<width;j++){
-			intImg[0][j]=intImg[0][j-1]+(pixels[++ind]&0xFF);
-		}
-		for(int i=1;i<height;i++){
-			intImg[i][0]=intImg[i-1][0]+(pixels[++ind]&0xFF);
-			for(int j=1;j<width;j++){
-				intImg[i][j]=intImg[i-1][j]+intImg[i][j-1]+(pixels[++ind]&0xFF)-intImg[i-1][j-1];
-			}
-		}
-		return intImg;
+		return integrate(pixels,width,height,false);
 	}
 	/**
 	 * Create a squared integral image
@@ -52,17 +40,20 @@ public class ImageUtil{
 	 * @return squared integral image
 	 */
 	public static final long[][] getSquaredIntegralImage(byte[] pixels,int width,int height){
+		return integrate(pixels,width,height,true);
+	}
+	private static long[][] integrate(byte[] pixels,int width,int height,boolean squared){
 		long[][] intImg=new long[height][width];
-		int ind=0;
-		intImg[0][0]=square(pixels[0]&0xFF);
-		for(int j=1;j<width;j++){
-			intImg[0][j]=intImg[0][j-1]+square(pixels[++ind]&0xFF);
-		}
-		for(int i=1;i<height;i++){
-			intImg[i][0]=intImg[i-1][0]+square(pixels[++ind]&0xFF);
-			for(int j=1;j<width;j++){
-				intImg[i][j]=intImg[i-1][j]+intImg[i][j-1]+square(pixels[++ind]&0xFF)-intImg[i-1][j-1];
+		long[] prev=new long[width];
+		for(int i=0, ind=0;i<height;i++){
+			long[] curr=intImg[i];
+			long rowSum=0;
+			for(int j=0;j<width;j++,ind++){
+				int value=pixels[ind]&0xFF;
+				rowSum+=squared?square(value):value;
+				curr[j]=prev[j]+rowSum;
 			}
+			prev=curr;
 		}
 		return intImg;
 	}
@@ -95,7 +86,8 @@ public class ImageUtil{
 		return mm+MM-mM-Mm;
 	}
 	/**
-	 * Compute the average x coordinate of nonzero pixels
+	 * Compute the average x coordinate of nonzero pixels, takes time linear
+	 * to the size of the window, IntegralImage.getMomentX is faster
 	 *
 	 * @param intImg the integral image
 	 * @param width the width of the picture
@@ -116,7 +108,8 @@ public class ImageUtil{
 		return count==0?Integer.MAX_VALUE:sum/count;
 	}
 	/**
-	 * Compute the average y coordinate of nonzero pixels
+	 * Compute the average y coordinate of nonzero pixels, takes time linear
+	 * to the size of the window, IntegralImage.getMomentY is faster
 	 *
 	 * @param intImg the integral image
 	 * @param width the width of the picture
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2019 Chan Chung Kwong
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.chungkwong.mathocr.offline.preprocessor;
+import java.util.*;
+/**
+ * Growable list of pixel indices
+ *
+ * @author Chan Chung Kwong
+ */
+class IndexList{
+	int[] indices=new int[16];
+	int size=0;
+	void add(int index){
+		if(size==indices.length){
+			indices=Arrays.copyOf(indices,size*2);
+		}
+		indices[size++]=index;
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2019 Chan Chung Kwong
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.chungkwong.mathocr.offline.preprocessor;
+/**
+ * Summed-area tables of a grayscale image stored in flat arrays, optionally
+ * with tables of first moments so that centroids of windows can be found in
+ * constant time. Rectangles are given by half-open ranges and are clipped to
+ * the image. The table of sums is an int array, it may wrap around but the
+ * sum of a rectangle with less than 2^31/255 pixels is still exact, so larger
+ * rectangles are summed in bands of such size.
+ *
+ * @author Chan Chung Kwong
+ */
+public class IntegralImage{
+	private static final int MAX_AREA=Integer.MAX_VALUE/255;
+	private final int width, height, stride;
+	private final int[] sum;
+	private final long[] sumX, sumY;
+	/**
+	 * Create a integral image
+	 *
+	 * @param pixels the input grayscale picture
+	 * @param width the width of the picture
+	 * @param height the height of the picture
+	 * @param moments if tables of first moments are needed
+	 */
+	public IntegralImage(byte[] pixels,int width,int height,boolean moments){
+		this.width=width;
+		this.height=height;
+		this.stride=width+1;
+		int size=stride*(height+1);
+		this.sum=new int[size];
+		this.sumX=moments?new long[size]:null;
+		this.sumY=moments?new long[size]:null;
+		update(pixels);
+	}
+	/**
+	 * Recompute the tables for another picture of the same size, so that the
+	 * arrays can be reused
+	 *
+	 * @param pixels the input grayscale picture
+	 */
+	public void update(byte[] pixels){
+		for(int i=0, ind=0, curr=stride+1;i<height;i++,curr++){
+			int rowSum=0;
+			if(sumX==null){
+				for(int j=0;j<width;j++,ind++,curr++){
+					rowSum+=pixels[ind]&0xFF;
+					sum[curr]=sum[curr-stride]+rowSum;
+				}
+			}else{
+				long rowSumX=0;
+				for(int j=0;j<width;j++,ind++,curr++){
+					int value=pixels[ind]&0xFF;
+					rowSum+=value;
+					sum[curr]=sum[curr-stride]+rowSum;
+					rowSumX+=value*j;
+					sumX[curr]=sumX[curr-stride]+rowSumX;
+					sumY[curr]=sumY[curr-stride]+(long)rowSum*i;
+				}
+			}
+		}
+	}
+	/**
+	 *
+	 * @return the width of the picture
+	 */
+	public int getWidth(){
+		return width;
+	}
+	/**
+	 *
+	 * @return the height of the picture
+	 */
+	public int getHeight(){
+		return height;
+	}
+	/**
+	 * Compute the sum of pixels in a rectangle
+	 *
+	 * @param x0 the first column
+	 * @param y0 the first row
+	 * @param x1 the column after the last one
+	 * @param y1 the row after the last one
+	 * @return the sum
+	 */
+	public long getSum(int x0,int y0,int x1,int y1){
+		x0=Math.max(x0,0);
+		y0=Math.max(y0,0);
+		x1=Math.min(x1,width);
+		y1=Math.min(y1,height);
+		if(x0>=x1||y0>=y1){
+			return 0;
+		}
+		int band=Math.max(MAX_AREA/(x1-x0),1);
+		long total=0;
+		for(int y=y0;y<y1;y+=band){
+			int y2=Math.min(y+band,y1);
+			total+=sum[y2*stride+x1]-sum[y*stride+x1]-sum[y2*stride+x0]+sum[y*stride+x0];
+		}
+		return total;
+	}
+	/**
+	 * Compute the sum of pixels weighted by x coordinates in a rectangle
+	 *
+	 * @param x0 the first column
+	 * @param y0 the first row
+	 * @param x1 the column after the last one
+	 * @param y1 the row after the last one
+	 * @return the sum
+	 */
+	public long getMomentX(int x0,int y0,int x1,int y1){
+		return query(sumX,x0,y0,x1,y1);
+	}
+	/**
+	 * Compute the sum of pixels weighted by y coordinates in a rectangle
+	 *
+	 * @param x0 the first column
+	 * @param y0 the first row
+	 * @param x1 the column after the last one
+	 * @param y1 the row after the last one
+	 * @return the sum
+	 */
+	public long getMomentY(int x0,int y0,int x1,int y1){
+		return query(sumY,x0,y0,x1,y1);
+	}
+	private long query(long[] table,int x0,int y0,int x1,int y1){
+		x0=Math.max(x0,0);
+		y0=Math.max(y0,0);
+		x1=Math.min(x1,width);
+		y1=Math.min(y1,height);
+		if(x0>=x1||y0>=y1){
+			return 0;
+		}
+		return table[y1*stride+x1]-table[y0*stride+x1]-table[y1*stride+x0]+table[y0*stride+x0];
+	}
+}
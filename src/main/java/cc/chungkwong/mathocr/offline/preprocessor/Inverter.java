@@ -54,20 +54,53 @@ public class Inverter extends SimplePreprocessor{
 	 */
 	public boolean checkWhiteOnBlack(byte[] pixels){
 		int threhold=new OtsuBinarizer().getThrehold(pixels);
+		return PixelKernel.getDefault().countAtMost(pixels,threhold)>pixels.length/2;
+	}
+	/**
+	 * Check if a image seem to be white on black
+	 *
+	 * @param histogram histogram of the gray levels of the image
+	 * @param total number of pixels in the image
+	 * @return test result
+	 */
+	public boolean checkWhiteOnBlack(int[] histogram,int total){
+		int threhold=new OtsuBinarizer().getThrehold(histogram,total);
 		int count=0;
-		for(byte pix:pixels){
-			if((pix&0xFF)<=threhold){
-				++count;
-			}
+		for(int i=0;i<=threhold;i++){
+			count+=histogram[i];
 		}
-		return count>pixels.length/2;
+		return count>total/2;
 	}
 	@Override
 	public void preprocess(byte[] from,byte[] to,int width,int height){
 		if(!autoDetect||checkWhiteOnBlack(from)){
-			for(int i=0;i<to.length;i++){
-				to[i]=(byte)(~from[i]);
-			}
+			PixelKernel.getDefault().invert(from,to,to.length);
+		}
+	}
+	@Override
+	protected boolean preprocess(byte[] from,byte[] to,int width,int height,PreprocessContext context){
+		if(!autoDetect||checkWhiteOnBlack(context.getHistogram(),from.length)){
+			PixelKernel.getDefault().invert(from,to,to.length);
+			return true;
+		}
+		return false;
+	}
+	@Override
+	protected boolean preprocess(GrayView from,GrayView to,PreprocessContext context){
+		if(from.isCompact()&&to.isCompact()){
+			return super.preprocess(from,to,context);
+		}
+		int width=from.getWidth(), height=from.getHeight();
+		if(autoDetect&&!checkWhiteOnBlack(context.getHistogram(),width*height)){
+			return false;
+		}
+		PixelKernel kernel=PixelKernel.getDefault();
+		byte[] row=new byte[width];
+		for(int i=0;i<height;i++){
+			from.fetch(i,row);
+			kernel.invert(row,row,width);
+			to.accept(i,row);
 		}
+		return true;
 	}
 }
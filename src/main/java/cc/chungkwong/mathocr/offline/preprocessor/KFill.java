@@ -16,25 +16,44 @@
  */
 package cc.chungkwong.mathocr.offline.preprocessor;
 import cc.chungkwong.mathocr.*;
+import cc.chungkwong.mathocr.common.*;
+import java.util.concurrent.*;
 /**
  *
  * @author Chan Chung Kwong
  */
 public class KFill extends SimplePreprocessor{
+	private static final int MIN_STRIP_HEIGHT=32, MIN_CHUNK_SIZE=4096;
+	private static final byte PENDING_OFF=1, PENDING_ON=2;
 	private final int k;
+	private final boolean incremental;
+	private final ForkJoinPool pool;
 	/**
 	 * Construct a Kfill
 	 *
 	 * @param k length of side of a window, should be a odd number
 	 */
 	public KFill(int k){
+		this(k,true,null);
+	}
+	/**
+	 * Construct a Kfill
+	 *
+	 * @param k length of side of a window, should be a odd number
+	 * @param incremental if only neighborhoods of pixels changed in the
+	 * previous passes should be examined again, the result is the same
+	 * @param pool the pool to be used, null for sequential processing
+	 */
+	public KFill(int k,boolean incremental,ForkJoinPool pool){
 		this.k=k;
+		this.incremental=incremental;
+		this.pool=pool;
 	}
 	/**
 	 * Construct a Kfill with global settings
 	 */
 	public KFill(){
-		this.k=Settings.DEFAULT.getInteger("KFILL_WINDOW");
+		this(Settings.DEFAULT.getInteger("KFILL_WINDOW"));
 	}
 	/**
 	 * @return length of size of window
@@ -42,186 +61,215 @@ public class KFill extends SimplePreprocessor{
 	public int getK(){
 		return k;
 	}
+	/**
+	 * @return if the incremental mode is used
+	 */
+	public boolean isIncremental(){
+		return incremental;
+	}
+	/**
+	 * @return the pool used or null if sequential
+	 */
+	public ForkJoinPool getPool(){
+		return pool;
+	}
 	@Override
 	public void preprocess(byte[] from,byte[] to,int width,int height){
-		int hk=k/2, len=to.length, k3m4=k*3-4;
-		byte[] pixels2=new byte[len];
+		int hk=k/2, len=to.length;
 		System.arraycopy(from,0,to,0,len);
-		boolean changed=true;
-		while(changed){
-			changed=false;
-			int ind=0;
-			for(int i=0;i<hk;i++){
-				for(int j=0;j<width;j++,ind++){
-					pixels2[ind]=to[ind];
+		if(width<k||height<k){
+			return;
+		}
+		for(int i=hk;i<height-hk;i++){
+			for(int j=hk, ind=i*width+hk;j<width-hk;j++,ind++){
+				if(to[ind]!=0x00){
+					to[ind]=(byte)0xFF;
 				}
 			}
-			for(int i=hk;i<height-hk;i++){
-				for(int j=0;j<hk;j++,ind++){
-					pixels2[ind]=to[ind];
-				}
-				for(int j=hk;j<width-hk;j++,ind++){
-					if(to[ind]==0x00){
-						int n=0, prev=-1, c=0, r=0;
-						for(int k=-hk;k<=hk;k++){
-							if(to[ind-hk*width+k]!=0x00){
-								++n;
-								if(prev==1){
-									++c;
-								}
-								prev=0;
-							}else{
-								prev=1;
-							}
-						}
-						for(int k=-hk+1;k<hk;k++){
-							if(to[ind+k*width+hk]!=0x00){
-								++n;
-								if(prev==1){
-									++c;
-								}
-								prev=0;
-							}else{
-								prev=1;
-							}
-						}
-						for(int k=hk;k>=-hk;k--){
-							if(to[ind+hk*width+k]!=0x00){
-								++n;
-								if(prev==1){
-									++c;
-								}
-								prev=0;
-							}else{
-								prev=1;
-							}
-						}
-						for(int k=hk-1;k>-hk;k--){
-							if(to[ind+k*width-hk]!=0x00){
-								++n;
-								if(prev==1){
-									++c;
-								}
-								prev=0;
-							}else{
-								prev=1;
-							}
-						}
-						if(prev==1&&to[ind-hk*width-hk]!=0x00){
-							++c;
+		}
+		if(incremental){
+			byte[] pending=new byte[len];
+			IndexList off=null, on=null;
+			while(off==null||on==null||off.size>0||on.size>0){
+				IndexList[] next=pass(to,width,height,off,on,pending,true);
+				off=next[0];
+				on=next[1];
+				next=pass(to,width,height,on,off,pending,false);
+				on=next[0];
+				off=next[1];
+			}
+		}else{
+			boolean changed=true;
+			while(changed){
+				changed=flip(to,width,height,true,evaluate(to,width,height,null,true));
+				changed|=flip(to,width,height,false,evaluate(to,width,height,null,false));
+			}
+		}
+	}
+	/**
+	 * Perform a sub-pass on the pixels in a work list, and compute the work
+	 * lists for the following sub-passes
+	 *
+	 * @param pixels the image
+	 * @param width width of the image
+	 * @param height height of the image
+	 * @param work pixels to be examined, null for all
+	 * @param other pixels to be examined in the next sub-pass, null for all
+	 * @param pending flags of pixels in work lists
+	 * @param black true if black pixels are to be turned white, false
+	 * otherwise
+	 * @return the work list of this kind of sub-pass in the next iteration and
+	 * the work list of the next sub-pass (null for all)
+	 */
+	private IndexList[] pass(byte[] pixels,int width,int height,IndexList work,IndexList other,byte[] pending,boolean black){
+		byte self=black?PENDING_OFF:PENDING_ON, next=black?PENDING_ON:PENDING_OFF;
+		IndexList[] changed=evaluate(pixels,width,height,work,black);
+		if(work!=null){
+			for(int i=0;i<work.size;i++){
+				pending[work.indices[i]]&=~self;
+			}
+		}
+		flip(pixels,width,height,black,changed);
+		IndexList again=new IndexList();
+		int hk=k/2;
+		for(IndexList list:changed){
+			for(int c=0;c<list.size;c++){
+				int ind=list.indices[c], x=ind%width, y=ind/width;
+				int x0=Math.max(x-hk,hk), x1=Math.min(x+hk,width-hk-1), y1=Math.min(y+hk,height-hk-1);
+				for(int i=Math.max(y-hk,hk);i<=y1;i++){
+					for(int j=x0, nind=i*width+x0;j<=x1;j++,nind++){
+						if((pending[nind]&self)==0){
+							pending[nind]|=self;
+							again.add(nind);
 						}
-						if(to[ind-hk*width-hk]!=0x00){
-							++r;
-						}else if(to[ind-hk*width+hk]!=0x00){
-							++r;
-						}else if(to[ind+hk*width-hk]!=0x00){
-							++r;
-						}else if(to[ind+hk*width+hk]!=0x00){
-							++r;
+						if(other!=null&&(pending[nind]&next)==0){
+							pending[nind]|=next;
+							other.add(nind);
 						}
-						if(c==1&&(n>k3m4||(n==k3m4&&r==2))){
-							changed=true;
-							pixels2[ind]=(byte)0xFF;
-						}else{
-							pixels2[ind]=0x00;
+					}
+				}
+			}
+		}
+		return new IndexList[]{again,other};
+	}
+	/**
+	 * Find pixels to be flipped in a sub-pass, the image is not modified
+	 *
+	 * @param pixels the image
+	 * @param width width of the image
+	 * @param height height of the image
+	 * @param work pixels to be examined, null for all
+	 * @param black true if black pixels are to be turned white, false
+	 * otherwise
+	 * @return pixels to be flipped, one list for each strip
+	 */
+	private IndexList[] evaluate(byte[] pixels,int width,int height,IndexList work,boolean black){
+		int hk=k/2;
+		int[] bounds=work==null?Strips.split(pool,height-2*hk,MIN_STRIP_HEIGHT):Strips.split(pool,work.size,MIN_CHUNK_SIZE);
+		IndexList[] changed=new IndexList[bounds.length-1];
+		Strips.forEach(pool,bounds,(index,start,end)->{
+			IndexList list=new IndexList();
+			if(work==null){
+				for(int i=start+hk;i<end+hk;i++){
+					for(int j=hk, ind=i*width+hk;j<width-hk;j++,ind++){
+						if((pixels[ind]==0x00)==black&&shouldFlip(pixels,ind,width,black)){
+							list.add(ind);
 						}
-					}else{
-						pixels2[ind]=(byte)0xFF;
 					}
 				}
-				for(int j=width-hk;j<width;j++,ind++){
-					pixels2[ind]=to[ind];
+			}else{
+				for(int i=start;i<end;i++){
+					int ind=work.indices[i];
+					if((pixels[ind]==0x00)==black&&shouldFlip(pixels,ind,width,black)){
+						list.add(ind);
+					}
 				}
 			}
-			for(;ind<len;ind++){
-				pixels2[ind]=to[ind];
+			changed[index]=list;
+		});
+		return changed;
+	}
+	private static boolean flip(byte[] pixels,int width,int height,boolean black,IndexList[] changed){
+		byte value=black?(byte)0xFF:0x00;
+		boolean flipped=false;
+		for(IndexList list:changed){
+			for(int i=0;i<list.size;i++){
+				pixels[list.indices[i]]=value;
 			}
-			ind=0;
-			for(int i=0;i<hk;i++){
-				for(int j=0;j<width;j++,ind++){
-					to[ind]=pixels2[ind];
+			flipped|=list.size>0;
+		}
+		return flipped;
+	}
+	/**
+	 * Check if a pixel of the given color should be flipped
+	 *
+	 * @param pixels the image
+	 * @param ind index of the pixel
+	 * @param width width of the image
+	 * @param black true if black pixels are to be turned white, false
+	 * otherwise
+	 * @return true if the pixels on the boundary of the window suggest filling
+	 * it
+	 */
+	private boolean shouldFlip(byte[] pixels,int ind,int width,boolean black){
+		int hk=k/2, k3m4=k*3-4;
+		int n=0, prev=-1, c=0, r=0;
+		for(int k=-hk;k<=hk;k++){
+			if((pixels[ind-hk*width+k]!=0x00)==black){
+				++n;
+				if(prev==1){
+					++c;
 				}
+				prev=0;
+			}else{
+				prev=1;
 			}
-			for(int i=hk;i<height-hk;i++){
-				for(int j=0;j<hk;j++,ind++){
-					to[ind]=pixels2[ind];
-				}
-				for(int j=hk;j<width-hk;j++,ind++){
-					if(pixels2[ind]!=0x00){
-						int n=0, prev=-1, c=0, r=0;
-						for(int k=-hk;k<=hk;k++){
-							if(pixels2[ind-hk*width+k]==0x00){
-								++n;
-								if(prev==1){
-									++c;
-								}
-								prev=0;
-							}else{
-								prev=1;
-							}
-						}
-						for(int k=-hk+1;k<hk;k++){
-							if(pixels2[ind+k*width+hk]==0x00){
-								++n;
-								if(prev==1){
-									++c;
-								}
-								prev=0;
-							}else{
-								prev=1;
-							}
-						}
-						for(int k=hk;k>=-hk;k--){
-							if(pixels2[ind+hk*width+k]==0x00){
-								++n;
-								if(prev==1){
-									++c;
-								}
-								prev=0;
-							}else{
-								prev=1;
-							}
-						}
-						for(int k=hk-1;k>-hk;k--){
-							if(pixels2[ind+k*width-hk]==0x00){
-								++n;
-								if(prev==1){
-									++c;
-								}
-								prev=0;
-							}else{
-								prev=1;
-							}
-						}
-						if(prev==1&&pixels2[ind-hk*width-hk]==0x00){
-							++c;
-						}
-						if(pixels2[ind-hk*width-hk]==0x00){
-							++r;
-						}else if(pixels2[ind-hk*width+hk]==0x00){
-							++r;
-						}else if(pixels2[ind+hk*width-hk]==0x00){
-							++r;
-						}else if(pixels2[ind+hk*width+hk]==0x00){
-							++r;
-						}
-						if(c==1&&(n>k3m4||(n==k3m4&&r==2))){
-							changed=true;
-							to[ind]=0x00;
-						}else{
-							to[ind]=(byte)0xFF;
-						}
-					}else{
-						to[ind]=0x00;
-					}
+		}
+		for(int k=-hk+1;k<hk;k++){
+			if((pixels[ind+k*width+hk]!=0x00)==black){
+				++n;
+				if(prev==1){
+					++c;
 				}
-				for(int j=width-hk;j<width;j++,ind++){
-					to[ind]=pixels2[ind];
+				prev=0;
+			}else{
+				prev=1;
+			}
+		}
+		for(int k=hk;k>=-hk;k--){
+			if((pixels[ind+hk*width+k]!=0x00)==black){
+				++n;
+				if(prev==1){
+					++c;
 				}
+				prev=0;
+			}else{
+				prev=1;
 			}
-			for(;ind<len;ind++){
-				to[ind]=pixels2[ind];
+		}
+		for(int k=hk-1;k>-hk;k--){
+			if((pixels[ind+k*width-hk]!=0x00)==black){
+				++n;
+				if(prev==1){
+					++c;
+				}
+				prev=0;
+			}else{
+				prev=1;
 			}
 		}
+		if(prev==1&&(pixels[ind-hk*width-hk]!=0x00)==black){
+			++c;
+		}
+		if((pixels[ind-hk*width-hk]!=0x00)==black){
+			++r;
+		}else if((pixels[ind-hk*width+hk]!=0x00)==black){
+			++r;
+		}else if((pixels[ind+hk*width-hk]!=0x00)==black){
+			++r;
+		}else if((pixels[ind+hk*width+hk]!=0x00)==black){
+			++r;
+		}
+		return c==1&&(n>k3m4||(n==k3m4&&r==2));
 	}
 }
@@ -27,22 +27,45 @@ public class MeanFilter extends SimplePreprocessor{
 	}
 	@Override
 	public void preprocess(byte[] from,byte[] to,int width,int height){
-		byte[] prev=new byte[width];
-		System.arraycopy(from,0,prev,0,width);
-		for(int i=1, start=width;i<height-1;i++){
-			byte tmp=from[start], tmp2;
-			to[start++]=tmp;
-			for(int j=1;j<width-1;j++,start++){
-				tmp2=(byte)(((prev[j-1]&0xFF)+(prev[j]&0xFF)+(prev[j+1]&0xFF)
-						+(tmp&0xFF)+(from[start]&0xFF)+(from[start+1]&0xFF)
-						+(from[start+width-1]&0xFF)+(from[start+width]&0xFF)+(from[start+width+1]&0xFF))/9);
-				prev[j-1]=tmp;
-				tmp=from[start];
-				to[start]=tmp2;
+		PixelKernel.getDefault().meanFilter(from,to,width,height);
+	}
+	/**
+	 * Get a source of rows of the filtered image, the result is the same as
+	 * inplace filtering
+	 *
+	 * @param source supplier of rows of the input image
+	 * @param width width of the input image
+	 * @param height height of the input image
+	 * @return supplier of rows of the output image
+	 */
+	public RowSource getRowSource(RowSource source,int width,int height){
+		return new RowSource(){
+			private byte[] prev=new byte[width], curr=new byte[width], next=new byte[width];
+			@Override
+			public void fetch(int row,byte[] buf){
+				if(row==0){
+					source.fetch(0,curr);
+				}else{
+					byte[] tmp=prev;
+					prev=curr;
+					curr=next;
+					next=tmp;
+				}
+				if(row+1<height){
+					source.fetch(row+1,next);
+				}
+				if(row==0||row==height-1||width<3){
+					System.arraycopy(curr,0,buf,0,width);
+					return;
+				}
+				buf[0]=curr[0];
+				for(int j=1;j<width-1;j++){
+					buf[j]=(byte)(((prev[j-1]&0xFF)+(prev[j]&0xFF)+(prev[j+1]&0xFF)
+							+(curr[j-1]&0xFF)+(curr[j]&0xFF)+(curr[j+1]&0xFF)
+							+(next[j-1]&0xFF)+(next[j]&0xFF)+(next[j+1]&0xFF))/9);
+				}
+				buf[width-1]=curr[width-1];
 			}
-			prev[width-2]=tmp;
-			tmp=prev[width-1]=from[start];
-			to[start++]=tmp;
-		}
+		};
 	}
 }
@@ -15,51 +15,187 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 package cc.chungkwong.mathocr.offline.preprocessor;
+import cc.chungkwong.mathocr.*;
+import java.util.*;
 /**
+ * Median filter with a square window. Pixels closer than the radius to the
+ * border are left unchanged. Windows larger than 3x3 are handled by the
+ * algorithm of Perreault and Hébert, so that the cost per pixel does not grow
+ * with the radius.
  *
  * @author Chan Chung Kwong
  */
 public class MedianFilter extends SimplePreprocessor{
+	private final int radius;
 	/**
-	 * Construct a MedianFilter
+	 * Construct a MedianFilter with radius given by the settings
 	 */
 	public MedianFilter(){
+		this(Settings.DEFAULT.getInteger("MEDIAN_FILTER_RADIUS"));
+	}
+	/**
+	 * Construct a MedianFilter
+	 *
+	 * @param radius the window is (2*radius+1)x(2*radius+1)
+	 */
+	public MedianFilter(int radius){
+		if(radius<1){
+			throw new IllegalArgumentException("Radius should be positive");
+		}
+		this.radius=radius;
+	}
+	/**
+	 *
+	 * @return the radius of the window
+	 */
+	public int getRadius(){
+		return radius;
 	}
 	@Override
 	public void preprocess(byte[] from,byte[] to,int width,int height){
-		byte[] prev=new byte[width], sort=new byte[9];
-		System.arraycopy(from,0,prev,0,width);
-		for(int i=1, start=width;i<height-1;i++){
-			byte tmp=from[start], tmp2, tmp3;
-			to[start++]=tmp;
-			for(int j=1;j<width-1;j++,start++){
-				sort[0]=prev[j-1];
-				sort[1]=prev[j];
-				sort[2]=prev[j+1];
-				sort[3]=tmp;
-				sort[4]=from[start];
-				sort[5]=from[start+1];
-				sort[6]=from[start+width-1];
-				sort[7]=from[start+width];
-				sort[8]=from[start+width+1];
-				prev[j-1]=tmp;
-				for(int k=0;k<5;k++){
-					for(int l=k+1;l<9;l++){
-						if((sort[l]&0xFF)<(sort[k]&0xFF)){
-							tmp3=sort[k];
-							sort[k]=sort[l];
-							sort[l]=tmp3;
+		if(from!=to){
+			System.arraycopy(from,0,to,0,width*height);
+		}
+		if(width<=2*radius||height<=2*radius){
+			return;
+		}
+		if(radius==1){
+			preprocess3(from,to,width,height);
+		}else{
+			preprocessHistogram(from,to,width,height);
+		}
+	}
+	/**
+	 * 3x3 median: each column of the window is sorted by a sorting network,
+	 * then the median is the median of the largest minimum, the median of
+	 * medians and the smallest maximum
+	 */
+	private static void preprocess3(byte[] from,byte[] to,int width,int height){
+		byte[] prev=Arrays.copyOf(from,width), curr=new byte[width];
+		int[] lo=new int[width], mid=new int[width], hi=new int[width];
+		for(int i=1, start=width;i<height-1;i++,start+=width){
+			System.arraycopy(from,start,curr,0,width);
+			for(int j=0, ind=start+width;j<width;j++,ind++){
+				int a=prev[j]&0xFF, b=curr[j]&0xFF, c=from[ind]&0xFF, t;
+				if(a>b){
+					t=a;
+					a=b;
+					b=t;
+				}
+				if(b>c){
+					t=b;
+					b=c;
+					c=t;
+				}
+				if(a>b){
+					t=a;
+					a=b;
+					b=t;
+				}
+				lo[j]=a;
+				mid[j]=b;
+				hi[j]=c;
+			}
+			for(int j=1, ind=start+1;j<width-1;j++,ind++){
+				int l=Math.max(Math.max(lo[j-1],lo[j]),lo[j+1]);
+				int m=median(mid[j-1],mid[j],mid[j+1]);
+				int h=Math.min(Math.min(hi[j-1],hi[j]),hi[j+1]);
+				to[ind]=(byte)median(l,m,h);
+			}
+			byte[] tmp=prev;
+			prev=curr;
+			curr=tmp;
+		}
+	}
+	private static int median(int a,int b,int c){
+		return Math.max(Math.min(a,b),Math.min(Math.max(a,b),c));
+	}
+	/**
+	 * Median by column histograms, each of which is updated once per row.
+	 * The histogram of the window is kept in two levels: the 16 coarse bins
+	 * are updated for each pixel, but only the fine bins in the coarse bin
+	 * containing the median are brought up to date.
+	 */
+	private void preprocessHistogram(byte[] from,byte[] to,int width,int height){
+		int size=2*radius+1, half=size*size/2;
+		int[] colFine=new int[width*256], colCoarse=new int[width*16];
+		int[] fine=new int[256], coarse=new int[16], updated=new int[16];
+		byte[][] rows=new byte[size+1][width];
+		for(int i=0;i<size-1;i++){
+			addRow(from,i,width,rows,colFine,colCoarse);
+		}
+		for(int i=radius, start=radius*width;i<height-radius;i++,start+=width){
+			addRow(from,i+radius,width,rows,colFine,colCoarse);
+			if(i>radius){
+				byte[] row=rows[(i-radius-1)%rows.length];
+				for(int j=0;j<width;j++){
+					int v=row[j]&0xFF;
+					--colFine[(j<<8)|v];
+					--colCoarse[(j<<4)|(v>>>4)];
+				}
+			}
+			Arrays.fill(coarse,0);
+			Arrays.fill(fine,0);
+			Arrays.fill(updated,0);
+			for(int j=0;j<size-1;j++){
+				for(int k=0, base=j<<4;k<16;k++){
+					coarse[k]+=colCoarse[base+k];
+				}
+			}
+			for(int j=radius;j<width-radius;j++){
+				int enter=(j+radius)<<4, leave=(j-radius-1)<<4;
+				if(leave>=0){
+					for(int k=0;k<16;k++){
+						coarse[k]+=colCoarse[enter+k]-colCoarse[leave+k];
+					}
+				}else{
+					for(int k=0;k<16;k++){
+						coarse[k]+=colCoarse[enter+k];
+					}
+				}
+				int bin=0, count=0;
+				while(count+coarse[bin]<=half){
+					count+=coarse[bin++];
+				}
+				int last=j+radius+1, base=bin<<4;
+				if(last-updated[bin]>size){
+					Arrays.fill(fine,base,base+16,0);
+					for(int c=last-size;c<last;c++){
+						for(int k=0, add=(c<<8)|base;k<16;k++){
+							fine[base+k]+=colFine[add+k];
 						}
 					}
+				}else{
+					for(int c=updated[bin];c<last;c++){
+						int add=(c<<8)|base;
+						if(c>=size){
+							int sub=((c-size)<<8)|base;
+							for(int k=0;k<16;k++){
+								fine[base+k]+=colFine[add+k]-colFine[sub+k];
+							}
+						}else{
+							for(int k=0;k<16;k++){
+								fine[base+k]+=colFine[add+k];
+							}
+						}
+					}
+				}
+				updated[bin]=last;
+				int value=base;
+				while(count+fine[value]<=half){
+					count+=fine[value++];
 				}
-				tmp2=sort[4];
-				prev[j-1]=tmp;
-				tmp=from[start];
-				to[start]=tmp2;
+				to[start+j]=(byte)value;
 			}
-			prev[width-2]=tmp;
-			tmp=prev[width-1]=from[start];
-			to[start++]=tmp;
+		}
+	}
+	private static void addRow(byte[] from,int i,int width,byte[][] rows,int[] colFine,int[] colCoarse){
+		byte[] row=rows[i%rows.length];
+		System.arraycopy(from,i*width,row,0,width);
+		for(int j=0;j<width;j++){
+			int v=row[j]&0xFF;
+			++colFine[(j<<8)|v];
+			++colCoarse[(j<<4)|(v>>>4)];
 		}
 	}
 }
@@ -33,7 +33,14 @@ public class NoiseRemove extends SimplePreprocessor{
 	}
 	@Override
 	public void preprocess(byte[] from,byte[] to,int width,int height){
-		ComponentPool components=new ComponentPool(from,width,height);
+		preprocess(from,to,width,height,new ComponentPool(from,width,height));
+	}
+	@Override
+	protected boolean preprocess(byte[] from,byte[] to,int width,int height,PreprocessContext context){
+		preprocess(from,to,width,height,context.getComponents());
+		return true;
+	}
+	private void preprocess(byte[] from,byte[] to,int width,int height,ComponentPool components){
 //		int sw=0, black=0;
 //		for(ConnectedComponent component:components.getComponents()){
 //			int b=component.getWeight();
@@ -49,27 +56,33 @@ public class NoiseRemove extends SimplePreprocessor{
 		for(int i=0;i<len;i++){
 			to[i]=(byte)(1-(from[i]&0x1));
 		}
-		long[][] intImg=ImageUtil.getIntegralImage(to,width,height);
+		IntegralImage intImg=new IntegralImage(to,width,height,true);
 		for(int i=0, ind=0;i<height;i++){
+			int y0=i-dl+1, y1=i+dr+1;
 			for(int j=0;j<width;j++,ind++){
-				if(to[ind]==1&&ImageUtil.windowValue(intImg,width,height,i,j,dl,dr)<ksh){
+				if(to[ind]==1&&intImg.getSum(j-dl+1,y0,j+dr+1,y1)<ksh){
 					to[ind]=0;
 				}
 			}
 		}
-		intImg=ImageUtil.getIntegralImage(to,width,height);
+		intImg.update(to);
 		for(int i=0, ind=0;i<height;i++){
+			int y0=i-dl+1, y1=i+dr+1;
 			for(int j=0;j<width;j++,ind++){
-				if(to[ind]==0&&ImageUtil.windowValue(intImg,width,height,i,j,dl,dr)>ksw
-						&&Math.abs(ImageUtil.averageX(intImg,width,height,i,j,dl,dr)-j)<dx&&Math.abs(ImageUtil.averageY(intImg,width,height,i,j,dl,dr)-i)<dy){
-					to[ind]=1;
+				if(to[ind]==0){
+					int x0=j-dl+1, x1=j+dr+1;
+					long count=intImg.getSum(x0,y0,x1,y1);
+					if(count>ksw&&Math.abs(intImg.getMomentX(x0,y0,x1,y1)/count-j)<dx&&Math.abs(intImg.getMomentY(x0,y0,x1,y1)/count-i)<dy){
+						to[ind]=1;
+					}
 				}
 			}
 		}
-		intImg=ImageUtil.getIntegralImage(to,width,height);
+		intImg.update(to);
 		for(int i=0, ind=0;i<height;i++){
+			int y0=i-dl+1, y1=i+dr+1;
 			for(int j=0;j<width;j++,ind++){
-				if(to[ind]==1||ImageUtil.windowValue(intImg,width,height,i,j,dl,dr)>ksw1){
+				if(to[ind]==1||intImg.getSum(j-dl+1,y0,j+dr+1,y1)>ksw1){
 					to[ind]=0x00;
 				}else{
 					to[ind]=(byte)0xff;
@@ -30,7 +30,24 @@ public class OtsuBinarizer extends GlobalBinarizer{
 	 */
 	@Override
 	protected int getThrehold(byte[] pixels){
-		int[] histogram=getHistogram(pixels);
+		return getThrehold(PixelKernel.getDefault().histogram(pixels),pixels.length);
+	}
+	@Override
+	protected int getThrehold(PreprocessContext context,byte[] pixels){
+		return getThrehold(context.getHistogram(),pixels.length);
+	}
+	@Override
+	protected int getThrehold(PreprocessContext context,GrayView pixels){
+		return getThrehold(context.getHistogram(),pixels.getWidth()*pixels.getHeight());
+	}
+	/**
+	 * Get the threhold value
+	 *
+	 * @param histogram histogram of the gray levels
+	 * @param total number of pixels
+	 * @return the threhold value
+	 */
+	public int getThrehold(int[] histogram,int total){
 		double except=0, uT=0, bestVar=0;
 		int acc=0, bestValue=0;
 		for(int i=0;i<256;i++){
@@ -42,12 +59,12 @@ public class OtsuBinarizer extends GlobalBinarizer{
 			if(acc==0){
 				continue;
 			}
-			if(pixels.length==acc){
+			if(total==acc){
 				break;
 			}
 			double u0=except/acc;
-			double u1=(uT-except)/(pixels.length-acc);
-			double var=(u0-u1)*(u0-u1)*acc*(pixels.length-acc);
+			double u1=(uT-except)/(total-acc);
+			double var=(u0-u1)*(u0-u1)*acc*(total-acc);
 			if(var>bestVar){
 				bestVar=var;
 				bestValue=t;
@@ -56,17 +73,4 @@ public class OtsuBinarizer extends GlobalBinarizer{
 		//System.out.println(bestValue);
 		return bestValue;
 	}
-	/**
-	 * Get the histogram of a image
-	 *
-	 * @param pixels pixel array of the image
-	 * @return the histogram of the image
-	 */
-	private static int[] getHistogram(byte[] pixels){
-		int[] histogram=new int[256];
-		for(int i=0;i<pixels.length;i++){
-			++histogram[pixels[i]&0xFF];
-		}
-		return histogram;
-	}
 }
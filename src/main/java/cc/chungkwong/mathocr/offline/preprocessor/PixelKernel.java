@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2019 Chan Chung Kwong
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.chungkwong.mathocr.offline.preprocessor;
+import cc.chungkwong.mathocr.*;
+import java.util.logging.*;
+/**
+ * Pixel level loops shared by simple preprocessors. A vectorized version is
+ * provided as a multi-release layer and is selected at runtime if the Vector
+ * API is available (i.e. Java 17 or above with
+ * <code>--add-modules jdk.incubator.vector</code>), otherwise the scalar loops
+ * here are used.
+ *
+ * @author Chan Chung Kwong
+ */
+public class PixelKernel{
+	private static final PixelKernel SCALAR=new PixelKernel();
+	private static final PixelKernel VECTOR=loadVector();
+	/**
+	 * Create a scalar kernel
+	 */
+	protected PixelKernel(){
+	}
+	private static PixelKernel loadVector(){
+		try{
+			return (PixelKernel)Class.forName("cc.chungkwong.mathocr.offline.preprocessor.VectorPixelKernel").getDeclaredConstructor().newInstance();
+		}catch(ReflectiveOperationException|LinkageError ex){
+			Logger.getLogger(PixelKernel.class.getName()).log(Level.FINE,"Vector API not available",ex);
+			return null;
+		}
+	}
+	/**
+	 * Get the kernel to be used
+	 *
+	 * @return the vectorized kernel if it is available and enabled, or else
+	 * the scalar kernel
+	 */
+	public static PixelKernel getDefault(){
+		return VECTOR!=null&&Settings.DEFAULT.getBoolean("VECTOR_KERNEL")?VECTOR:SCALAR;
+	}
+	/**
+	 *
+	 * @return the scalar kernel
+	 */
+	public static PixelKernel getScalar(){
+		return SCALAR;
+	}
+	/**
+	 *
+	 * @return the vectorized kernel, or null if it is not available
+	 */
+	public static PixelKernel getVector(){
+		return VECTOR;
+	}
+	/**
+	 * Convert a row of pixels to grayscale
+	 *
+	 * @param argb the pixels in ARGB format
+	 * @param gray the array to store the gray levels
+	 * @param offset the index in gray to store the first pixel
+	 * @param length the number of pixels
+	 * @param wR coefficient of red component
+	 * @param wG coefficient of green component
+	 * @param wB coefficient of blue component
+	 */
+	public void toGrayscale(int[] argb,byte[] gray,int offset,int length,int wR,int wG,int wB){
+		int divisor=wR+wG+wB;
+		for(int j=0, ind=offset;j<length;j++,ind++){
+			int pixel=argb[j];
+			int alpha=(pixel>>>24)&0xff, red=(pixel>>>16)&0xff, green=(pixel>>>8)&0xff, blue=pixel&0xff;
+			gray[ind]=(byte)(255-(255-(red*wR+green*wG+blue*wB)/divisor)*alpha/255);
+		}
+	}
+	/**
+	 * Apply a 3x3 mean filter to the interior pixels. The first and the last
+	 * column of the other rows are copied to the output, but the first and the
+	 * last row of the output are never written. So every boundary pixel keeps
+	 * its value if the filtering is inplace, otherwise the first and the last
+	 * row of the output keep whatever they held before
+	 *
+	 * @param from pixel array of the input image
+	 * @param to pixel array of the output image
+	 * @param width width of the image
+	 * @param height height of the image
+	 */
+	public void meanFilter(byte[] from,byte[] to,int width,int height){
+		byte[] prev=new byte[width];
+		System.arraycopy(from,0,prev,0,width);
+		for(int i=1, start=width;i<height-1;i++){
+			byte tmp=from[start], tmp2;
+			to[start++]=tmp;
+			for(int j=1;j<width-1;j++,start++){
+				tmp2=(byte)(((prev[j-1]&0xFF)+(prev[j]&0xFF)+(prev[j+1]&0xFF)
+						+(tmp&0xFF)+(from[start]&0xFF)+(from[start+1]&0xFF)
+						+(from[start+width-1]&0xFF)+(from[start+width]&0xFF)+(from[start+width+1]&0xFF))/9);
+				prev[j-1]=tmp;
+				tmp=from[start];
+				to[start]=tmp2;
+			}
+			prev[width-2]=tmp;
+			tmp=prev[width-1]=from[start];
+			to[start++]=tmp;
+		}
+	}
+	/**
+	 * Global thresholding
+	 *
+	 * @param from pixel array of the input image
+	 * @param to pixel array of the output image
+	 * @param length number of pixels
+	 * @param limit pixels not greater than it become black
+	 */
+	public void threshold(byte[] from,byte[] to,int length,int limit){
+		for(int i=0;i<length;i++){
+			to[i]=(from[i]&0xFF)<=limit?0x00:(byte)0xff;
+		}
+	}
+	/**
+	 * Invert colors
+	 *
+	 * @param from pixel array of the input image
+	 * @param to pixel array of the output image
+	 * @param length number of pixels
+	 */
+	public void invert(byte[] from,byte[] to,int length){
+		for(int i=0;i<length;i++){
+			to[i]=(byte)(~from[i]);
+		}
+	}
+	/**
+	 * Count pixels that are not greater than a value
+	 *
+	 * @param pixels pixel array of the image
+	 * @param limit the value
+	 * @return the number of pixels
+	 */
+	public int countAtMost(byte[] pixels,int limit){
+		int count=0;
+		for(byte pix:pixels){
+			if((pix&0xFF)<=limit){
+				++count;
+			}
+		}
+		return count;
+	}
+	/**
+	 * Get the histogram of a image
+	 *
+	 * @param pixels pixel array of the image
+	 * @return the histogram of the image
+	 */
+	public int[] histogram(byte[] pixels){
+		int[] histogram=new int[256];
+		for(int i=0;i<pixels.length;i++){
+			++histogram[pixels[i]&0xFF];
+		}
+		return histogram;
+	}
+}
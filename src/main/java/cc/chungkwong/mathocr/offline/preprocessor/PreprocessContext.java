@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2019 Chan Chung Kwong
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.chungkwong.mathocr.offline.preprocessor;
+import cc.chungkwong.mathocr.offline.*;
+import java.awt.image.*;
+/**
+ * Statistics of the image being preprocessed, each of them is computed on
+ * first use and cached until the pixels are changed. Stages that change the
+ * pixels should call setImage or invalidate. The statistics assume that the
+ * image is of type TYPE_BYTE_GRAY.
+ *
+ * @author Chan Chung Kwong
+ */
+public class PreprocessContext{
+	private BufferedImage image;
+	private int[] histogram;
+	private ComponentPool components;
+	private Bitmap bitmap;
+	private int offsetX, offsetY;
+	/**
+	 * Create a context
+	 *
+	 * @param image the initial image
+	 */
+	public PreprocessContext(BufferedImage image){
+		this.image=image;
+	}
+	/**
+	 *
+	 * @return the current image
+	 */
+	public BufferedImage getImage(){
+		return image;
+	}
+	/**
+	 * Replace the current image and drop the cached statistics
+	 *
+	 * @param image the new image
+	 */
+	public void setImage(BufferedImage image){
+		this.image=image;
+		invalidate();
+	}
+	/**
+	 * Drop the cached statistics, should be called after the pixels of the
+	 * current image are modified
+	 */
+	public void invalidate(){
+		histogram=null;
+		components=null;
+		bitmap=null;
+	}
+	/**
+	 * Record that the current image is a part of the original image
+	 *
+	 * @param dx x-coordinate of the current image in the previous image
+	 * @param dy y-coordinate of the current image in the previous image
+	 */
+	public void translate(int dx,int dy){
+		offsetX+=dx;
+		offsetY+=dy;
+	}
+	/**
+	 *
+	 * @return x-coordinate of the current image in the original image
+	 */
+	public int getOffsetX(){
+		return offsetX;
+	}
+	/**
+	 *
+	 * @return y-coordinate of the current image in the original image
+	 */
+	public int getOffsetY(){
+		return offsetY;
+	}
+	private GrayView getPixels(){
+		return GrayView.of(image);
+	}
+	/**
+	 *
+	 * @return histogram of the gray levels
+	 */
+	public int[] getHistogram(){
+		if(histogram==null){
+			histogram=getPixels().histogram();
+		}
+		return histogram;
+	}
+	/**
+	 * Get the connected components of black pixels. The pool is owned by the
+	 * context and shared with the other stages, a stage that modifies it
+	 * should call invalidate afterward.
+	 *
+	 * @return connected components of black pixels
+	 */
+	public ComponentPool getComponents(){
+		if(components==null){
+			components=new ComponentPool(BinaryView.of(image));
+		}
+		return components;
+	}
+	/**
+	 * Get the image as a bitmap. The bitmap is owned by the context and shared
+	 * with the other stages, a stage that modifies it should call invalidate
+	 * afterward.
+	 *
+	 * @return binary bitmap converted from the image
+	 */
+	public Bitmap getBitmap(){
+		if(bitmap==null){
+			bitmap=new Bitmap(image);
+		}
+		return bitmap;
+	}
+}
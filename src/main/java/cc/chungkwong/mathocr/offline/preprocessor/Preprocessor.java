@@ -29,4 +29,18 @@ public interface Preprocessor{
 	 * @return processed image
 	 */
 	public BufferedImage apply(BufferedImage image,boolean inplace);
+	/**
+	 * Perform preprocess operation, statistics in the context can be used and
+	 * the context will be updated
+	 *
+	 * @param image input image
+	 * @param inplace attempt to reuse input image or not
+	 * @param context context of the image
+	 * @return processed image
+	 */
+	public default BufferedImage apply(BufferedImage image,boolean inplace,PreprocessContext context){
+		BufferedImage result=apply(image,inplace);
+		context.setImage(result);
+		return result;
+	}
 }
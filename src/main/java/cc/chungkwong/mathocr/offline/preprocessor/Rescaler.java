@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2019 Chan Chung Kwong
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.chungkwong.mathocr.offline.preprocessor;
+import cc.chungkwong.mathocr.*;
+import cc.chungkwong.mathocr.offline.*;
+import java.awt.*;
+import java.awt.image.*;
+import java.util.*;
+/**
+ * Downscale images with thick strokes, so that later stages process fewer
+ * pixels. The stroke width is estimated from a strided sample of the image.
+ *
+ * @author Chan Chung Kwong
+ */
+public class Rescaler{
+	private static final int SAMPLE_SIZE=1<<20;
+	private static final double MIN_RATIO=2.0;
+	private final int targetWidth;
+	/**
+	 * Construct a Rescaler with target stroke width given by the settings
+	 */
+	public Rescaler(){
+		this(Settings.DEFAULT.getInteger("TARGET_STROKE_WIDTH"));
+	}
+	/**
+	 * Construct a Rescaler
+	 *
+	 * @param targetWidth expected stroke width after rescaling
+	 */
+	public Rescaler(int targetWidth){
+		this.targetWidth=targetWidth;
+	}
+	/**
+	 *
+	 * @return expected stroke width after rescaling
+	 */
+	public int getTargetWidth(){
+		return targetWidth;
+	}
+	/**
+	 * Estimate the median stroke width of a image
+	 *
+	 * @param image the image
+	 * @return the stroke width in pixels, or 0 if it cannot be estimated
+	 */
+	public double estimateStrokeWidth(BufferedImage image){
+		int width=image.getWidth(), height=image.getHeight();
+		int stride=Math.max(1,(int)Math.sqrt((double)width*height/SAMPLE_SIZE));
+		int w=(width+stride-1)/stride, h=(height+stride-1)/stride;
+		byte[] sample=new byte[w*h];
+		PixelKernel kernel=PixelKernel.getDefault();
+		GrayView pixels=image.getType()==BufferedImage.TYPE_BYTE_GRAY?GrayView.of(image):null;
+		if(pixels!=null){
+			byte[] data=pixels.getData();
+			for(int i=0, ind=0;i<h;i++){
+				for(int j=0, k=pixels.getIndex(0,i*stride);j<w;j++,ind++,k+=stride){
+					sample[ind]=data[k];
+				}
+			}
+		}else{
+			int[] row=new int[width], sampledRow=new int[w];
+			for(int i=0, ind=0;i<h;i++,ind+=w){
+				image.getRGB(0,i*stride,width,1,row,0,width);
+				for(int j=0;j<w;j++){
+					sampledRow[j]=row[j*stride];
+				}
+				kernel.toGrayscale(sampledRow,sample,ind,w,316,624,84);
+			}
+		}
+		new OtsuBinarizer().preprocess(sample,sample,w,h);
+		if(kernel.countAtMost(sample,0)>sample.length/2){
+			return 0;
+		}
+		byte[] padded=new byte[(w+2)*(h+2)];
+		Arrays.fill(padded,(byte)0xFF);
+		for(int i=0;i<h;i++){
+			System.arraycopy(sample,i*w,padded,(i+1)*(w+2)+1,w);
+		}
+		StrokeWidthTransform.StrokeSpace strokeSpace=StrokeWidthTransform.transform(new Bitmap(padded,w+2,h+2));
+		short[] thicknessH=strokeSpace.getThicknessH(), thicknessS=strokeSpace.getThicknessS();
+		int[] histogram=new int[Short.MAX_VALUE*2];
+		int count=0;
+		for(int i=0;i<padded.length;i++){
+			int thickness=Math.min(thicknessH[i],(int)(thicknessS[i]*Math.sqrt(2)+0.5));
+			if(padded[i]==0&&thickness>0){
+				++histogram[thickness];
+				++count;
+			}
+		}
+		if(count==0){
+			return 0;
+		}
+		for(int t=1, acc=0;;t++){
+			acc+=histogram[t];
+			if(acc*2>=count){
+				return t*stride;
+			}
+		}
+	}
+	/**
+	 * Get the scale to be applied
+	 *
+	 * @param image the image
+	 * @return the scale, 1 if the image should not be rescaled
+	 */
+	public double getScale(BufferedImage image){
+		double strokeWidth=estimateStrokeWidth(image);
+		if(strokeWidth<targetWidth*MIN_RATIO){
+			return 1.0;
+		}
+		return targetWidth/strokeWidth;
+	}
+	/**
+	 * Downscale a image, by halving repeatedly with bilinear interpolation
+	 * before the final step to avoid aliasing
+	 *
+	 * @param image the image
+	 * @param scale the scale, should be less than 1
+	 * @return the downscaled image
+	 */
+	public BufferedImage rescale(BufferedImage image,double scale){
+		int type=image.getType()==BufferedImage.TYPE_BYTE_GRAY?BufferedImage.TYPE_BYTE_GRAY
+				:(image.getColorModel().hasAlpha()?BufferedImage.TYPE_INT_ARGB:BufferedImage.TYPE_INT_RGB);
+		int targetW=Math.max(1,(int)Math.round(image.getWidth()*scale));
+		int targetH=Math.max(1,(int)Math.round(image.getHeight()*scale));
+		int w=image.getWidth(), h=image.getHeight();
+		do{
+			w=Math.max(targetW,w/2);
+			h=Math.max(targetH,h/2);
+			BufferedImage scaled=new BufferedImage(w,h,type);
+			Graphics2D g2d=scaled.createGraphics();
+			g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION,RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g2d.drawImage(image,0,0,w,h,null);
+			g2d.dispose();
+			image=scaled;
+		}while(w>targetW||h>targetH);
+		return image;
+	}
+}
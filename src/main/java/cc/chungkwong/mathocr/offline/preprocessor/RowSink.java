@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2019 Chan Chung Kwong
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.chungkwong.mathocr.offline.preprocessor;
+/**
+ * Consumer of rows of a image
+ *
+ * @author Chan Chung Kwong
+ */
+public interface RowSink{
+	/**
+	 * Accept a row, rows are given one by one from top to bottom
+	 *
+	 * @param row the index of the row
+	 * @param buf the pixels of the row, which may be reused after this method
+	 * return
+	 */
+	public void accept(int row,byte[] buf);
+}
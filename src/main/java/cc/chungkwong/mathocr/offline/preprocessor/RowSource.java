@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2019 Chan Chung Kwong
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.chungkwong.mathocr.offline.preprocessor;
+/**
+ * Supplier of rows of a grayscale image
+ *
+ * @author Chan Chung Kwong
+ */
+public interface RowSource{
+	/**
+	 * Fetch a row, rows are requested one by one from top to bottom
+	 *
+	 * @param row the index of the row
+	 * @param buf the array to be filled with the pixels of the row
+	 */
+	public void fetch(int row,byte[] buf);
+}
@@ -16,15 +16,19 @@
  */
 package cc.chungkwong.mathocr.offline.preprocessor;
 import cc.chungkwong.mathocr.*;
+import cc.chungkwong.mathocr.common.*;
+import java.util.concurrent.*;
 /**
  * Sauvola's threholding
  *
  * @author Chan Chung Kwong
  */
 public class SauvolaBinarizer extends SimplePreprocessor{
+	private static final int MIN_STRIP_HEIGHT=64;
 	private final double k, k2;
 	private final int windowWidth;
 	private final int windowHeight;
+	private final ForkJoinPool pool;
 	/**
 	 * Create an binarizer using global settings
 	 */
@@ -39,6 +43,17 @@ public class SauvolaBinarizer extends SimplePreprocessor{
 	 * @param window side of the sliding windows
 	 */
 	public SauvolaBinarizer(double weight,int window){
+		this(weight,window,null);
+	}
+	/**
+	 * Create an binarizer that work on horizontal strips in parallel
+	 *
+	 * @param weight weight
+	 * @param window side of the sliding windows
+	 * @param pool the pool to be used, null for sequential processing
+	 */
+	public SauvolaBinarizer(double weight,int window,ForkJoinPool pool){
+		this.pool=pool;
 		this.windowWidth=window;
 		this.windowHeight=window;
 		if(weight<0){
@@ -61,9 +76,19 @@ public class SauvolaBinarizer extends SimplePreprocessor{
 	public int getWindow(){
 		return windowWidth;
 	}
+	/**
+	 *
+	 * @return the pool used or null if sequential
+	 */
+	public ForkJoinPool getPool(){
+		return pool;
+	}
 	@Override
 	public void preprocess(byte[] from,byte[] to,int width,int height){
-		if(from==to){
+		if(pool!=null){
+			GrayView view=new GrayView(from,width,height);
+			preprocessParallel(view,from==to?view:new GrayView(to,width,height),width,height);
+		}else if(from==to){
 			preprocessSafe(to,width,height);
 		}else{
 			preprocessUnsafe(from,to,width,height);
@@ -179,6 +204,136 @@ public class SauvolaBinarizer extends SimplePreprocessor{
 			}
 		}
 	}
+	@Override
+	protected boolean preprocess(GrayView from,GrayView to,PreprocessContext context){
+		if(from.isCompact()&&to.isCompact()){
+			return super.preprocess(from,to,context);
+		}
+		if(pool!=null){
+			preprocessParallel(from,to,from.getWidth(),from.getHeight());
+		}else{
+			preprocess(from,to,from.getWidth(),from.getHeight());
+		}
+		return true;
+	}
+	private void preprocessParallel(GrayView from,GrayView to,int width,int height){
+		int o=(windowHeight+1)/2, u=windowHeight/2;
+		int[] bounds=Strips.split(pool,height,Math.max(windowHeight,MIN_STRIP_HEIGHT));
+		byte[][][] halos=new byte[bounds.length-1][][];
+		if(from==to){
+			//rows around a strip may be binarized by another strip before being read
+			for(int k=0;k<halos.length;k++){
+				int start=bounds[k], end=bounds[k+1];
+				int top=Math.max(start-o,0), bottom=Math.min(end+u,height);
+				halos[k]=new byte[start-top+bottom-end][width];
+				for(int i=top;i<start;i++){
+					from.fetch(i,halos[k][i-top]);
+				}
+				for(int i=end;i<bottom;i++){
+					from.fetch(i,halos[k][start-top+i-end]);
+				}
+			}
+		}
+		Strips.forEach(pool,bounds,(k,start,end)->{
+			byte[][] halo=halos[k];
+			int top=Math.max(start-o,0);
+			RowSource source=(row,buf)->{
+				if(halo==null||(row>=start&&row<end)){
+					from.fetch(row,buf);
+				}else if(row<start){
+					System.arraycopy(halo[row-top],0,buf,0,width);
+				}else{
+					System.arraycopy(halo[start-top+row-end],0,buf,0,width);
+				}
+			};
+			preprocess(source,to,width,height,start,end);
+		});
+	}
+	/**
+	 * Perform preprocess operation row by row, only a window of rows are kept
+	 * in memory
+	 *
+	 * @param source supplier of rows of the input image
+	 * @param sink consumer of rows of the output image
+	 * @param width width of the input image
+	 * @param height height of the input image
+	 */
+	public void preprocess(RowSource source,RowSink sink,int width,int height){
+		preprocess(source,sink,width,height,0,height);
+	}
+	/**
+	 * Perform preprocess operation on a horizontal strip row by row, only a
+	 * window of rows are kept in memory
+	 *
+	 * @param source supplier of rows of the input image
+	 * @param sink consumer of rows of the output image
+	 * @param width width of the input image
+	 * @param height height of the input image
+	 * @param start the first row of the strip
+	 * @param end the row after the last row of the strip
+	 */
+	public void preprocess(RowSource source,RowSink sink,int width,int height,int start,int end){
+		int[] integral=new int[width+1];
+		int[] integralSquare=new int[width+1];
+		int l=(windowWidth+1)/2, r=windowWidth/2;
+		int o=(windowHeight+1)/2, u=windowHeight/2;
+		int rows=o+u+1;
+		byte[][] window=new byte[Math.min(rows,height)][width];
+		for(int i=Math.max(start-o,0), imax=Math.min(height,start+u);i<imax;i++){
+			byte[] row=window[i%rows];
+			source.fetch(i,row);
+			for(int j=1;j<=width;j++){
+				int pixel=row[j-1]&0xFF;
+				integral[j]+=pixel;
+				integralSquare[j]+=pixel*pixel;
+			}
+		}
+		int dr1=Math.min(r,width);
+		int dr2=Math.max(width-r+1,1);
+		byte[] to=new byte[width];
+		for(int i=start;i<end;i++){
+			int winTop=Math.max(i-o,-1), winBottom=Math.min(height-1,i+u);
+			if(i>=l){
+				byte[] row=window[winTop%rows];
+				for(int j=1;j<=width;j++){
+					int pixel=row[j-1]&0xFF;
+					integral[j]-=pixel;
+					integralSquare[j]-=pixel*pixel;
+				}
+			}
+			if(i+r<height){
+				byte[] row=window[winBottom%rows];
+				source.fetch(winBottom,row);
+				for(int j=1;j<=width;j++){
+					int pixel=row[j-1]&0xFF;
+					integral[j]+=pixel;
+					integralSquare[j]+=pixel*pixel;
+				}
+			}
+			byte[] from=window[i%rows];
+			int sum=0;
+			int squareSum=0;
+			for(int j=1;j<=dr1;j++){
+				sum+=integral[j];
+				squareSum+=integralSquare[j];
+			}
+			for(int j=1;j<=width-r;j++){
+				int winLeft=Math.max(j-l,0), winRight=j+r;
+				int count=(winBottom-winTop)*(winRight-winLeft);
+				sum+=integral[winRight]-integral[winLeft];
+				squareSum+=integralSquare[winRight]-integralSquare[winLeft];
+				to[j-1]=isForeground(from[j-1]&0xFF,sum,squareSum,count)?0x00:(byte)0xff;
+			}
+			for(int j=dr2;j<=width;j++){
+				int winLeft=Math.max(j-l,0), winRight=width;
+				int count=(winBottom-winTop)*(winRight-winLeft);
+				sum-=integral[winLeft];
+				squareSum-=integralSquare[winLeft];
+				to[j-1]=isForeground(from[j-1]&0xFF,sum,squareSum,count)?0x00:(byte)0xff;
+			}
+			sink.accept(i,to);
+		}
+	}
 	private boolean isForeground(int pixel,int sum,int squareSum,int count){
 		double mean=((double)sum)/count;
 		double variance=((double)squareSum)/count-mean*mean;
@@ -16,7 +16,6 @@
  */
 package cc.chungkwong.mathocr.offline.preprocessor;
 import java.awt.image.*;
-import java.util.*;
 /**
  *
  * @author Chan Chung Kwong
@@ -30,21 +29,54 @@ public abstract class SimplePreprocessor implements Preprocessor{
 	 */
 	@Override
 	public BufferedImage apply(BufferedImage image,boolean inplace){
+		return apply(image,inplace,new PreprocessContext(image));
+	}
+	@Override
+	public BufferedImage apply(BufferedImage image,boolean inplace,PreprocessContext context){
 		int width=image.getWidth(), height=image.getHeight();
 		BufferedImage result;
-		byte[] from=((DataBufferByte)image.getRaster().getDataBuffer()).getData();
-		byte[] to;
+		GrayView from=GrayView.of(image), to;
 		if(inplace){
 			result=image;
 			to=from;
 		}else{
 			result=new BufferedImage(width,height,BufferedImage.TYPE_BYTE_GRAY);
-			to=((DataBufferByte)result.getRaster().getDataBuffer()).getData();
-			Arrays.fill(to,(byte)0xFF);
+			to=GrayView.of(result);
+			to.fill((byte)0xFF);
+		}
+		if(preprocess(from,to,context)||result!=image){
+			context.setImage(result);
 		}
-		preprocess(from,to,width,height);
 		return result;
 	}
+	/**
+	 * Perform preprocess operation on views, so that a part of an image can be
+	 * processed without being copied. Subclasses working on the whole pixel
+	 * arrays do not need to override this method, non-compact views are
+	 * copied to and from arrays for them.
+	 *
+	 * @param from view of the input image
+	 * @param to view of the output image, may be the same as from
+	 * @param context context of the input image
+	 * @return if the pixels may be changed
+	 */
+	protected boolean preprocess(GrayView from,GrayView to,PreprocessContext context){
+		int width=from.getWidth(), height=from.getHeight();
+		byte[] input=from.toArray();
+		byte[] output;
+		if(to==from){
+			output=input;
+		}else if(to.isCompact()){
+			output=to.getData();
+		}else{
+			output=to.toArray();
+		}
+		boolean changed=preprocess(input,output,width,height,context);
+		if(changed){
+			to.setPixels(output);
+		}
+		return changed;
+	}
 	/**
 	 * Perform preprocess operation
 	 *
@@ -54,4 +86,18 @@ public abstract class SimplePreprocessor implements Preprocessor{
 	 * @param height height of the input image
 	 */
 	public abstract void preprocess(byte[] from,byte[] to,int width,int height);
+	/**
+	 * Perform preprocess operation with statistics from a context
+	 *
+	 * @param from pixel array of the input image
+	 * @param to pixel array of the output image
+	 * @param width width of the input image
+	 * @param height height of the input image
+	 * @param context context of the input image
+	 * @return if the pixels may be changed
+	 */
+	protected boolean preprocess(byte[] from,byte[] to,int width,int height,PreprocessContext context){
+		preprocess(from,to,width,height);
+		return true;
+	}
 }
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2019 Chan Chung Kwong
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.chungkwong.mathocr.offline.preprocessor;
+import cc.chungkwong.mathocr.offline.*;
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+import javax.imageio.*;
+import javax.imageio.metadata.*;
+import javax.imageio.stream.*;
+import org.w3c.dom.*;
+/**
+ * Binarize images that are too large to be processed as a whole. Rows are
+ * converted to grayscale and thresholded by Sauvola's method with a rolling
+ * window, the black pixels are passed to connected component analysis
+ * directly, so neither the grayscale image nor the binary image is created.
+ * TIFF images and images in formats allowing random access or tiles are
+ * decoded band by band, bands being aligned to strips or tiles, so only a band
+ * is kept in memory. Other formats(e.g. PNG, JPEG and GIF) have to be decoded
+ * from the top for every region, so they are decoded once as a whole to keep
+ * the time linear, and then memory usage is proportional to the image size.
+ *
+ * @author Chan Chung Kwong
+ */
+public class StreamingBinarizer{
+	private static final int DEFAULT_BAND_HEIGHT=128;
+	private static final int TAG_ROWS_PER_STRIP=278;
+	private final ToGrayscale grayscale;
+	private final SauvolaBinarizer binarizer;
+	private final int bandHeight;
+	/**
+	 * Construct a StreamingBinarizer with global settings
+	 */
+	public StreamingBinarizer(){
+		this(new ToGrayscale(),new SauvolaBinarizer(),DEFAULT_BAND_HEIGHT);
+	}
+	/**
+	 * Construct a StreamingBinarizer
+	 *
+	 * @param grayscale the grayscale converter
+	 * @param binarizer the binarizer
+	 * @param bandHeight number of rows decoded at a time if the image can be
+	 * decoded band by band, rounded up to whole strips or tiles
+	 */
+	public StreamingBinarizer(ToGrayscale grayscale,SauvolaBinarizer binarizer,int bandHeight){
+		this.grayscale=grayscale;
+		this.binarizer=binarizer;
+		this.bandHeight=bandHeight;
+	}
+	/**
+	 * Binarize a image file
+	 *
+	 * @param file the file
+	 * @return connected components of the binarized image
+	 * @throws IOException if the file cannot be decoded
+	 */
+	public ComponentPool binarize(File file) throws IOException{
+		try(ImageInputStream in=ImageIO.createImageInputStream(file)){
+			if(in==null){
+				throw new IOException("Cannot open "+file);
+			}
+			Iterator<ImageReader> readers=ImageIO.getImageReaders(in);
+			if(!readers.hasNext()){
+				throw new IOException("Unsupported format: "+file);
+			}
+			ImageReader reader=readers.next();
+			try{
+				reader.setInput(in,true,true);
+				return binarize(reader,0);
+			}finally{
+				reader.dispose();
+			}
+		}
+	}
+	/**
+	 * Binarize a image from a reader
+	 *
+	 * @param reader the reader with input set
+	 * @param imageIndex the index of the image
+	 * @return connected components of the binarized image
+	 * @throws IOException if the image cannot be decoded
+	 */
+	public ComponentPool binarize(ImageReader reader,int imageIndex) throws IOException{
+		int width=reader.getWidth(imageIndex), height=reader.getHeight(imageIndex);
+		ComponentPool.Labeller labeller=new ComponentPool.Labeller(width);
+		try{
+			binarizer.preprocess(getRowSource(reader,imageIndex),labeller,width,height);
+		}catch(UncheckedIOException ex){
+			throw ex.getCause();
+		}
+		return labeller.finish();
+	}
+	/**
+	 * Get a source of rows of the grayscale image, rows are decoded band by
+	 * band when needed if the image is a TIFF image or the reader supports
+	 * random access or tiles, otherwise the image is decoded at once
+	 *
+	 * @param reader the reader with input set
+	 * @param imageIndex the index of the image
+	 * @return the source, which throws UncheckedIOException if the image
+	 * cannot be decoded
+	 * @throws IOException if the size of the image is not available
+	 */
+	public RowSource getRowSource(ImageReader reader,int imageIndex) throws IOException{
+		int unit=getBandUnit(reader,imageIndex);
+		if(unit<=0){
+			BufferedImage image=reader.read(imageIndex);
+			RowSource source=grayscale.getRowSource(image);
+			return source!=null?source:grayscale.getRowSource(grayscale.apply(image,true));
+		}
+		int width=reader.getWidth(imageIndex), height=reader.getHeight(imageIndex);
+		//whole strips or tiles are decoded anyway
+		int bandHeight=(this.bandHeight+unit-1)/unit*unit;
+		ImageReadParam param=reader.getDefaultReadParam();
+		return new RowSource(){
+			private int bandStart=0, bandEnd=0;
+			private RowSource band;
+			@Override
+			public void fetch(int row,byte[] buf){
+				if(row<bandStart||row>=bandEnd){
+					bandStart=row;
+					bandEnd=Math.min(row+bandHeight,height);
+					param.setSourceRegion(new Rectangle(0,bandStart,width,bandEnd-bandStart));
+					try{
+						BufferedImage image=reader.read(imageIndex,param);
+						band=grayscale.getRowSource(image);
+						if(band==null){
+							band=grayscale.getRowSource(grayscale.apply(image,true));
+						}
+					}catch(IOException ex){
+						throw new UncheckedIOException(ex);
+					}
+				}
+				band.fetch(row-bandStart,buf);
+			}
+		};
+	}
+	/**
+	 * Get the number of rows that can be decoded independently
+	 *
+	 * @return the height of tiles or strips, 1 if any band can be decoded
+	 * efficiently, or 0 if the image can only be decoded from the top
+	 */
+	private static int getBandUnit(ImageReader reader,int imageIndex) throws IOException{
+		if(reader.isImageTiled(imageIndex)){
+			return reader.getTileHeight(imageIndex);
+		}else if(reader.getFormatName().toLowerCase().startsWith("tif")){
+			int rowsPerStrip=getRowsPerStrip(reader.getImageMetadata(imageIndex));
+			return rowsPerStrip>0?Math.min(rowsPerStrip,reader.getHeight(imageIndex)):reader.getHeight(imageIndex);
+		}else{
+			return reader.isRandomAccessEasy(imageIndex)?1:0;
+		}
+	}
+	/**
+	 * Find the RowsPerStrip field in the native metadata of TIFF readers
+	 *
+	 * @return the number of rows in each strip or 0 if not found
+	 */
+	private static int getRowsPerStrip(IIOMetadata metadata){
+		if(metadata==null||metadata.getNativeMetadataFormatName()==null){
+			return 0;
+		}
+		IIOMetadataNode root=(IIOMetadataNode)metadata.getAsTree(metadata.getNativeMetadataFormatName());
+		NodeList fields=root.getElementsByTagName("TIFFField");
+		for(int i=0;i<fields.getLength();i++){
+			IIOMetadataNode field=(IIOMetadataNode)fields.item(i);
+			if(field.getAttribute("number").equals(Integer.toString(TAG_ROWS_PER_STRIP))){
+				NodeList values=field.getElementsByTagName("*");
+				for(int j=0;j<values.getLength();j++){
+					String value=((IIOMetadataNode)values.item(j)).getAttribute("value");
+					if(!value.isEmpty()){
+						try{
+							return (int)Math.min(Long.parseLong(value),Integer.MAX_VALUE);
+						}catch(NumberFormatException ex){
+							return 0;
+						}
+					}
+				}
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright (C) 2019 Chan Chung Kwong
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.chungkwong.mathocr.offline.preprocessor;
+import cc.chungkwong.mathocr.common.*;
+import cc.chungkwong.mathocr.offline.*;
+import java.util.*;
+import java.util.concurrent.*;
+/**
+ * Structuring element for morphological operations, stored as horizontal runs
+ * of offsets. Rectangles and lines are processed by the van Herk/Gil-Werman
+ * algorithm, so the cost per pixel does not depend on the size of the element;
+ * other elements are decomposed into one such pass per distinct run.
+ *
+ * @author Chan Chung Kwong
+ */
+public class StructuringElement{
+	private static final int MIN_STRIP_SIZE=32, LANES=64;
+	private static final byte WHITE=(byte)0xFF;
+	private final List<RunLength> runs;
+	private StructuringElement(List<RunLength> runs){
+		runs.sort(null);
+		this.runs=Collections.unmodifiableList(runs);
+	}
+	/**
+	 * Create a rectangular structuring element centered at the origin
+	 *
+	 * @param width width of the rectangle
+	 * @param height height of the rectangle
+	 * @return the structuring element
+	 */
+	public static StructuringElement rectangle(int width,int height){
+		if(width<=0||height<=0){
+			throw new IllegalArgumentException("Size should be positive");
+		}
+		List<RunLength> runs=new ArrayList<>(height);
+		for(int i=-height/2;i<height-height/2;i++){
+			runs.add(new RunLength(i,-width/2,width-1));
+		}
+		return new StructuringElement(runs);
+	}
+	/**
+	 * Create a line segment centered at the origin
+	 *
+	 * @param length number of pixels in the line segment
+	 * @param dx step in x direction, should be -1, 0 or 1
+	 * @param dy step in y direction, should be -1, 0 or 1
+	 * @return the structuring element
+	 */
+	public static StructuringElement line(int length,int dx,int dy){
+		if(length<=0||Math.abs(dx)>1||Math.abs(dy)>1||(dx==0&&dy==0)){
+			throw new IllegalArgumentException("Invalid line");
+		}
+		if(dy==0){
+			return rectangle(length,1);
+		}
+		List<RunLength> runs=new ArrayList<>(length);
+		for(int t=-length/2;t<length-length/2;t++){
+			runs.add(new RunLength(t*dy,t*dx,0));
+		}
+		return new StructuringElement(runs);
+	}
+	/**
+	 * Create a structuring element from a template
+	 *
+	 * @param template the bit for the offset (x,y) is at index
+	 * (y+size/2)*size+(x+size/2)
+	 * @param size length of side of the template
+	 * @return the structuring element
+	 */
+	public static StructuringElement fromTemplate(BitSet template,int size){
+		int r=size/2;
+		List<RunLength> runs=new ArrayList<>();
+		for(int k=0;k<size;k++){
+			int start=template.nextSetBit(k*size), end=(k+1)*size;
+			while(start>=0&&start<end){
+				int stop=Math.min(template.nextClearBit(start),end);
+				runs.add(new RunLength(k-r,start-k*size-r,stop-start-1));
+				start=template.nextSetBit(stop);
+			}
+		}
+		return new StructuringElement(runs);
+	}
+	/**
+	 * @return the horizontal runs of offsets in the structuring element
+	 */
+	public List<RunLength> getRuns(){
+		return runs;
+	}
+	/**
+	 * @return the structuring element consisting of the negation of the offsets
+	 */
+	public StructuringElement reflect(){
+		List<RunLength> reflected=new ArrayList<>(runs.size());
+		for(RunLength run:runs){
+			reflected.add(new RunLength(-run.getY(),-run.getX()-run.getCount(),run.getCount()));
+		}
+		return new StructuringElement(reflected);
+	}
+	/**
+	 * Dilate the black pixels, a pixel of the output is the minimum of the
+	 * pixels of the input at the pixel minus the offsets
+	 *
+	 * @param from pixel array of the input image
+	 * @param to pixel array of the output image, can be the same as from
+	 * @param width width of the input image
+	 * @param height height of the input image
+	 * @param pool the pool to be used, null for sequential processing
+	 */
+	public void dilate(byte[] from,byte[] to,int width,int height,ForkJoinPool pool){
+		reflect().filter(from,to,width,height,true,pool);
+	}
+	/**
+	 * Erode the black pixels, a pixel of the output is the maximum of the
+	 * pixels of the input at the pixel plus the offsets, pixels outside the
+	 * image are considered as white
+	 *
+	 * @param from pixel array of the input image
+	 * @param to pixel array of the output image, can be the same as from
+	 * @param width width of the input image
+	 * @param height height of the input image
+	 * @param pool the pool to be used, null for sequential processing
+	 */
+	public void erode(byte[] from,byte[] to,int width,int height,ForkJoinPool pool){
+		filter(from,to,width,height,false,pool);
+	}
+	void filter(byte[] from,byte[] to,int width,int height,boolean min,ForkJoinPool pool){
+		if(runs.isEmpty()){
+			Arrays.fill(to,0,width*height,min?WHITE:0x00);
+			return;
+		}
+		RunLength first=runs.get(0), last=runs.get(runs.size()-1);
+		int lo=first.getY(), hi=last.getY();
+		if(isRectangle()&&lo!=hi&&first.getCount()!=0){
+			byte[] tmp=new byte[width*height];
+			filterRows(from,tmp,width,height,0,first.getX(),first.getCount()+1,min,pool);
+			filterColumns(tmp,to,width,height,0,lo,hi-lo+1,min,pool);
+			return;
+		}else if(from==to){
+			from=Arrays.copyOf(from,width*height);
+		}
+		if(isRectangle()){
+			if(lo==hi){
+				filterRows(from,to,width,height,lo,first.getX(),first.getCount()+1,min,pool);
+			}else{
+				filterColumns(from,to,width,height,first.getX(),lo,hi-lo+1,min,pool);
+			}
+		}else if(isDiagonal()){
+			int slope=last.getX()>first.getX()?1:-1;
+			filterDiagonals(from,to,width,height,slope,lo,hi-lo+1,first.getX()-lo*slope,min,pool);
+		}else{
+			filterRuns(from,to,width,height,min,pool);
+		}
+	}
+	private boolean isRectangle(){
+		RunLength first=runs.get(0);
+		for(int i=0;i<runs.size();i++){
+			RunLength run=runs.get(i);
+			if(run.getY()!=first.getY()+i||run.getX()!=first.getX()||run.getCount()!=first.getCount()){
+				return false;
+			}
+		}
+		return true;
+	}
+	private boolean isDiagonal(){
+		if(runs.size()<2){
+			return false;
+		}
+		RunLength first=runs.get(0);
+		int slope=runs.get(1).getX()-first.getX();
+		if(slope!=1&&slope!=-1){
+			return false;
+		}
+		for(int i=0;i<runs.size();i++){
+			RunLength run=runs.get(i);
+			if(run.getY()!=first.getY()+i||run.getX()!=first.getX()+i*slope||run.getCount()!=0){
+				return false;
+			}
+		}
+		return true;
+	}
+	/**
+	 * Horizontal pass, the output at (x,y) comes from the input at
+	 * (x+start..x+start+size-1,y+dy)
+	 */
+	private static void filterRows(byte[] from,byte[] to,int width,int height,int dy,int start,int size,boolean min,ForkJoinPool pool){
+		Strips.forEach(pool,Strips.split(pool,height,MIN_STRIP_SIZE),(index,begin,end)->{
+			int len=width+size-1;
+			byte[] e=new byte[len], g=new byte[len], h=new byte[len];
+			for(int i=begin;i<end;i++){
+				int src=i+dy;
+				if(src<0||src>=height){
+					Arrays.fill(to,i*width,(i+1)*width,WHITE);
+					continue;
+				}
+				gather(from,src*width,width,start,e,0,len);
+				vanHerkGilWerman(e,g,h,1,len,size,min);
+				System.arraycopy(e,0,to,i*width,width);
+			}
+		});
+	}
+	/**
+	 * Vertical pass, the output at (x,y) comes from the input at
+	 * (x+dx,y+start..y+start+size-1)
+	 */
+	private static void filterColumns(byte[] from,byte[] to,int width,int height,int dx,int start,int size,boolean min,ForkJoinPool pool){
+		Strips.forEach(pool,Strips.split(pool,width,MIN_STRIP_SIZE),(index,begin,end)->{
+			int len=height+size-1, lanes=Math.min(LANES,end-begin);
+			byte[] e=new byte[len*lanes], g=new byte[len*lanes], h=new byte[len*lanes];
+			for(int j=begin;j<end;j+=lanes){
+				int count=Math.min(lanes,end-j);
+				for(int t=0, ind=0;t<len;t++,ind+=count){
+					int y=t+start;
+					if(y<0||y>=height){
+						Arrays.fill(e,ind,ind+count,WHITE);
+					}else{
+						gather(from,y*width,width,j+dx,e,ind,count);
+					}
+				}
+				vanHerkGilWerman(e,g,h,count,len,size,min);
+				for(int i=0, ind=0;i<height;i++,ind+=count){
+					System.arraycopy(e,ind,to,i*width+j,count);
+				}
+			}
+		});
+	}
+	/**
+	 * Pass along diagonals, the output at (x,y) comes from the input at
+	 * (x+c+t*slope,y+t) for t from start to start+size-1
+	 */
+	private static void filterDiagonals(byte[] from,byte[] to,int width,int height,int slope,int start,int size,int c,boolean min,ForkJoinPool pool){
+		int count=width+height-1;
+		Strips.forEach(pool,Strips.split(pool,count,MIN_STRIP_SIZE),(index,begin,end)->{
+			int len=Math.min(width,height)+size-1;
+			byte[] e=new byte[len], g=new byte[len], h=new byte[len];
+			for(int d=begin;d<end;d++){
+				int x0, y0;
+				if(d<height){
+					y0=height-1-d;
+					x0=slope>0?0:width-1;
+				}else{
+					y0=0;
+					x0=slope>0?d-height+1:width-2-(d-height);
+				}
+				int n=Math.min(height-y0,slope>0?width-x0:x0+1);
+				for(int t=0;t<n+size-1;t++){
+					int y=y0+t+start, x=x0+(t+start)*slope+c;
+					e[t]=y>=0&&y<height&&x>=0&&x<width?from[y*width+x]:WHITE;
+				}
+				vanHerkGilWerman(e,g,h,1,n+size-1,size,min);
+				for(int t=0, ind=y0*width+x0;t<n;t++,ind+=width+slope){
+					to[ind]=e[t];
+				}
+			}
+		});
+	}
+	/**
+	 * Decomposition into horizontal runs, each distinct run is applied once
+	 * horizontally and the shifted rows are combined
+	 */
+	private void filterRuns(byte[] from,byte[] to,int width,int height,boolean min,ForkJoinPool pool){
+		int[] bounds=Strips.split(pool,height,MIN_STRIP_SIZE);
+		byte[] acc=new byte[width*height], tmp=new byte[width*height];
+		Arrays.fill(acc,min?WHITE:0x00);
+		Map<Long,List<Integer>> groups=new LinkedHashMap<>();
+		for(RunLength run:runs){
+			groups.computeIfAbsent(((long)run.getX()<<32)|run.getCount(),key->new ArrayList<>()).add(run.getY());
+		}
+		for(Map.Entry<Long,List<Integer>> entry:groups.entrySet()){
+			int start=(int)(entry.getKey()>>32), size=(int)(long)entry.getKey()+1;
+			filterRows(from,tmp,width,height,0,start,size,min,pool);
+			Strips.forEach(pool,bounds,(index,begin,end)->{
+				for(int dy:entry.getValue()){
+					for(int i=begin;i<end;i++){
+						int src=i+dy;
+						if(src<0||src>=height){
+							if(!min){
+								Arrays.fill(acc,i*width,(i+1)*width,WHITE);
+							}
+						}else{
+							combine(tmp,src*width,acc,i*width,width,min);
+						}
+					}
+				}
+			});
+		}
+		System.arraycopy(acc,0,to,0,width*height);
+	}
+	private static void gather(byte[] from,int offset,int width,int start,byte[] e,int ind,int count){
+		int i=Math.min(Math.max(-start,0),count), stop=Math.max(Math.min(width-start,count),i);
+		Arrays.fill(e,ind,ind+i,WHITE);
+		if(stop>i){
+			System.arraycopy(from,offset+start+i,e,ind+i,stop-i);
+		}
+		Arrays.fill(e,ind+stop,ind+count,WHITE);
+	}
+	private static void combine(byte[] src,int srcOffset,byte[] dst,int dstOffset,int len,boolean min){
+		if(min){
+			for(int j=0;j<len;j++){
+				if((src[srcOffset+j]&0xFF)<(dst[dstOffset+j]&0xFF)){
+					dst[dstOffset+j]=src[srcOffset+j];
+				}
+			}
+		}else{
+			for(int j=0;j<len;j++){
+				if((src[srcOffset+j]&0xFF)>(dst[dstOffset+j]&0xFF)){
+					dst[dstOffset+j]=src[srcOffset+j];
+				}
+			}
+		}
+	}
+	/**
+	 * Compute the minimum or maximum over windows of size elements for lanes
+	 * independent sequences stored interleaved in e, the result for the window
+	 * starting at t is stored back to e at t
+	 */
+	private static void vanHerkGilWerman(byte[] e,byte[] g,byte[] h,int lanes,int len,int size,boolean min){
+		if(size==1){
+			return;
+		}
+		for(int t=0, ind=0;t<len;t++){
+			if(t%size==0){
+				System.arraycopy(e,ind,g,ind,lanes);
+				ind+=lanes;
+			}else{
+				for(int l=0;l<lanes;l++,ind++){
+					g[ind]=pick(g[ind-lanes],e[ind],min);
+				}
+			}
+		}
+		for(int t=len-1, ind=(len-1)*lanes;t>=0;t--,ind-=lanes){
+			if(t%size==size-1||t==len-1){
+				System.arraycopy(e,ind,h,ind,lanes);
+			}else{
+				for(int l=0;l<lanes;l++){
+					h[ind+l]=pick(h[ind+lanes+l],e[ind+l],min);
+				}
+			}
+		}
+		for(int t=0, ind=0, shift=(size-1)*lanes;t+size<=len;t++){
+			for(int l=0;l<lanes;l++,ind++){
+				e[ind]=pick(h[ind],g[ind+shift],min);
+			}
+		}
+	}
+	private static byte pick(byte a,byte b,boolean min){
+		return ((a&0xFF)<(b&0xFF))==min?a:b;
+	}
+}
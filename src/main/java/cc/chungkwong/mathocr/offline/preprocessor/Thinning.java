@@ -24,59 +24,124 @@ import java.util.*;
  */
 public class Thinning extends SimplePreprocessor{
 	public static void thin(Bitmap bitmap){
-		thin(bitmap.getData(),bitmap.getWidth()-2,bitmap.getHeight()-2);
+		thin(bitmap,(byte)0xFF);
 	}
+	/**
+	 * Thin a image with margin of one pixel, deleted pixels are marked
+	 *
+	 * @param bitmap the image
+	 * @param erased the value to be given to deleted pixels, should not be 0
+	 */
+	public static void thin(Bitmap bitmap,byte erased){
+		thin(bitmap.getData(),bitmap.getWidth()-2,bitmap.getHeight()-2,erased);
+	}
+	private static final byte PENDING_FIRST=1, PENDING_SECOND=2;
+	private static final boolean[] USELESS_FIRST=new boolean[256], USELESS_SECOND=new boolean[256];
+	static{
+		boolean[] neighbor=new boolean[8];
+		for(int code=0;code<256;code++){
+			for(int i=0;i<8;i++){
+				neighbor[i]=(code&(1<<i))!=0;
+			}
+			USELESS_FIRST[code]=isUselessFirst(neighbor);
+			USELESS_SECOND[code]=isUselessSecond(neighbor);
+		}
+	}
+	/**
+	 * Thin a image with margin of one pixel. The two kinds of sub-iterations
+	 * are performed alternatively until nothing can be deleted, but only
+	 * pixels whose neighborhood changed since the last sub-iteration of the
+	 * same kind are examined.
+	 *
+	 * @param foreground the pixels, 0 for foreground
+	 * @param width width of the image without margin
+	 * @param height height of the image without margin
+	 */
 	public static void thin(byte[] foreground,int width,int height){
-		byte[] backup=new byte[(height+2)*(width+2)];
-		boolean[] ignore=new boolean[height+2];
-		boolean[] ignore2=new boolean[height+2];
-		Arrays.fill(ignore2,true);
-		while(thin(foreground,backup,ignore,ignore2,width,height,true)
-				|thin(foreground,backup,ignore,ignore2,width,height,false)){
-			boolean[] tmp=ignore2;
-			ignore2=ignore;
-			ignore=tmp;
-			Arrays.fill(ignore2,true);
+		thin(foreground,width,height,(byte)0xFF);
+	}
+	/**
+	 * Thin a image with margin of one pixel, deleted pixels are marked
+	 *
+	 * @param foreground the pixels, 0 for foreground
+	 * @param width width of the image without margin
+	 * @param height height of the image without margin
+	 * @param erased the value to be given to deleted pixels, should not be 0
+	 */
+	public static void thin(byte[] foreground,int width,int height,byte erased){
+		int stride=width+2;
+		int[] offsets=new int[]{-stride,-stride+1,1,stride+1,stride,stride-1,-1,-stride-1};
+		byte[] pending=new byte[foreground.length];
+		Arrays.fill(pending,(byte)(PENDING_FIRST|PENDING_SECOND));
+		IndexList first=new IndexList(), second=new IndexList();
+		for(int i=1, ind=stride+1;i<=height;i++,ind+=2){
+			for(int j=1;j<=width;j++,ind++){
+				pending[ind]=0;
+				if(foreground[ind]==0&&getCode(foreground,ind,offsets)!=0xFF){
+					pending[ind]=PENDING_FIRST|PENDING_SECOND;
+					first.add(ind);
+					second.add(ind);
+				}
+			}
+		}
+		while(first.size>0||second.size>0){
+			first=thin(foreground,pending,first,second,offsets,true,erased);
+			second=thin(foreground,pending,second,first,offsets,false,erased);
 		}
 	}
-	private static boolean thin(byte[] pixels,byte[] backup,boolean[] ignore,boolean[] ignore2,
-			int width,int height,boolean firstStep){
-		System.arraycopy(pixels,0,backup,0,backup.length);
-		boolean chanaged=false;
-		boolean[] neighbor=new boolean[8];
-		for(int i=1, ind=width+2;i<=height;i++){
-			if(ignore[i-1]&&ignore[i+1]&&ignore[i]){
-				ind+=(width+2);
-				continue;
+	/**
+	 * Perform a sub-iteration on pixels in a work list
+	 *
+	 * @param pixels the image
+	 * @param pending flags of pixels in work lists
+	 * @param work pixels to be examined
+	 * @param other work list of the next sub-iteration
+	 * @param offsets offsets of the neighbors
+	 * @param firstStep if this is the first kind of sub-iteration
+	 * @param erased the value to be given to deleted pixels
+	 * @return work list of the next sub-iteration of the same kind
+	 */
+	private static IndexList thin(byte[] pixels,byte[] pending,IndexList work,IndexList other,int[] offsets,boolean firstStep,byte erased){
+		byte self=firstStep?PENDING_FIRST:PENDING_SECOND, next=firstStep?PENDING_SECOND:PENDING_FIRST;
+		boolean[] useless=firstStep?USELESS_FIRST:USELESS_SECOND;
+		IndexList deleted=new IndexList();
+		for(int i=0;i<work.size;i++){
+			int ind=work.indices[i];
+			pending[ind]&=~self;
+			if(pixels[ind]==0&&useless[getCode(pixels,ind,offsets)]){
+				deleted.add(ind);
 			}
-			++ind;
-			for(int j=0;j<width;j++,ind++){
-				if(pixels[ind]==0){
-					neighbor[0]=backup[ind-width-2]==0;
-					neighbor[1]=backup[ind-width-1]==0;
-					neighbor[2]=backup[ind+1]==0;
-					neighbor[3]=backup[ind+width+3]==0;
-					neighbor[4]=backup[ind+width+2]==0;
-					neighbor[5]=backup[ind+width+1]==0;
-					neighbor[6]=backup[ind-1]==0;
-					neighbor[7]=backup[ind-width-3]==0;
-					boolean toDelete;
-					if(firstStep){
-						toDelete=isUselessFirst(neighbor);
-					}else{
-						toDelete=isUselessSecond(neighbor);
+		}
+		for(int i=0;i<deleted.size;i++){
+			pixels[deleted.indices[i]]=erased;
+		}
+		IndexList again=new IndexList();
+		for(int i=0;i<deleted.size;i++){
+			int ind=deleted.indices[i];
+			for(int offset:offsets){
+				int neighbor=ind+offset;
+				if(pixels[neighbor]==0){
+					if((pending[neighbor]&self)==0){
+						pending[neighbor]|=self;
+						again.add(neighbor);
 					}
-					if(toDelete){
-						chanaged=true;
-						ignore[i]=false;
-						ignore2[i]=false;
-						pixels[ind]=(byte)0xFF;
+					if((pending[neighbor]&next)==0){
+						pending[neighbor]|=next;
+						other.add(neighbor);
 					}
 				}
 			}
-			++ind;
 		}
-		return chanaged;
+		return again;
+	}
+	private static int getCode(byte[] pixels,int ind,int[] offsets){
+		int code=0;
+		for(int i=0;i<8;i++){
+			if(pixels[ind+offsets[i]]==0){
+				code|=1<<i;
+			}
+		}
+		return code;
 	}
 	private static boolean isUselessFirst(boolean[] p){
 		return isNeighborCountUseless(p)&&isComponentCountUseless(p)&&(!p[0]||!p[2]||!p[4])&&(!p[2]||!p[4]||!p[6]);
@@ -24,7 +24,7 @@ import java.util.*;
  */
 public class ToGrayscale implements Preprocessor{
 	private final int wR, wG, wB, divisor;
-	private final boolean linear;
+	private final boolean linear, approximate;
 	/**
 	 * Construct a Grayscale
 	 */
@@ -37,7 +37,19 @@ public class ToGrayscale implements Preprocessor{
 	 * @param linear linear color space
 	 */
 	public ToGrayscale(boolean linear){
+		this(linear,false);
+	}
+	/**
+	 * Construct a Grayscale
+	 *
+	 * @param linear linear color space
+	 * @param approximate in linear mode, convert RGB images by lookup tables
+	 * instead of ColorConvertOp, which is much faster but about 1% of the
+	 * pixels differ by one gray level
+	 */
+	public ToGrayscale(boolean linear,boolean approximate){
 		this.linear=linear;
+		this.approximate=approximate;
 		this.wR=316;
 		this.wG=624;
 		this.wB=84;
@@ -52,17 +64,28 @@ public class ToGrayscale implements Preprocessor{
 	 */
 	public ToGrayscale(int wR,int wG,int wB){
 		this.linear=false;
+		this.approximate=false;
 		this.wR=wR;
 		this.wG=wG;
 		this.wB=wB;
 		this.divisor=wR+wG+wB;
 	}
 	private static final ColorConvertOp TO_GRAYSCALE;
+	private static final int LINEAR_SHIFT=16;
+	private static final int[] LINEAR_R=new int[256], LINEAR_G=new int[256], LINEAR_B=new int[256];
 	static{
 		Map<RenderingHints.Key,Object> config=new HashMap<>();
 		config.put(RenderingHints.KEY_DITHERING,RenderingHints.VALUE_DITHER_DISABLE);
 		config.put(RenderingHints.KEY_COLOR_RENDERING,RenderingHints.VALUE_COLOR_RENDER_SPEED);
 		TO_GRAYSCALE=new ColorConvertOp(new RenderingHints(config));
+		//Luminance of sRGB adapted to D50, as the PCS used by ColorConvertOp
+		for(int i=0;i<256;i++){
+			double c=i/255.0;
+			double linear=(c<=0.04045?c/12.92:Math.pow((c+0.055)/1.055,2.4))*255*(1<<LINEAR_SHIFT);
+			LINEAR_R[i]=(int)Math.round(linear*0.2224884);
+			LINEAR_G[i]=(int)Math.round(linear*0.71690369);
+			LINEAR_B[i]=(int)Math.round(linear*0.06060791);
+		}
 	}
 	@Override
 	public BufferedImage apply(BufferedImage image,boolean inplace){
@@ -71,20 +94,199 @@ public class ToGrayscale implements Preprocessor{
 		}
 		int width=image.getWidth(), height=image.getHeight();
 		BufferedImage result=new BufferedImage(width,height,BufferedImage.TYPE_BYTE_GRAY);
-		if(linear){
+		byte[] buf=((DataBufferByte)result.getRaster().getDataBuffer()).getData();
+		RowSource source=getRowSource(image);
+		if(source!=null){
+			byte[] row=new byte[width];
+			for(int i=0, ind=0;i<height;i++,ind+=width){
+				source.fetch(i,row);
+				System.arraycopy(row,0,buf,ind,width);
+			}
+		}else if(linear){
 			TO_GRAYSCALE.filter(image,result);
 		}else{
-			byte[] buf=((DataBufferByte)result.getRaster().getDataBuffer()).getData();
 			int[] row=new int[width];
-			for(int i=0, ind=0;i<height;i++){
+			PixelKernel kernel=PixelKernel.getDefault();
+			for(int i=0, ind=0;i<height;i++,ind+=width){
 				image.getRGB(0,i,width,1,row,0,width);
-				for(int j=0;j<width;j++,ind++){
-					int pixel=row[j];
-					int alpha=(pixel>>>24)&0xff, red=(pixel>>>16)&0xff, green=(pixel>>>8)&0xff, blue=pixel&0xff;
-					buf[ind]=(byte)(255-(255-(red*wR+green*wG+blue*wB)/divisor)*alpha/255);
-				}
+				kernel.toGrayscale(row,buf,ind,width,wR,wG,wB);
 			}
 		}
 		return result;
 	}
+	@Override
+	public BufferedImage apply(BufferedImage image,boolean inplace,PreprocessContext context){
+		BufferedImage result=apply(image,inplace);
+		if(result!=image){
+			context.setImage(result);
+		}
+		return result;
+	}
+	/**
+	 * Get a source of rows of the grayscale image, so that the grayscale image
+	 * can be processed without being created as a whole. The rows are the same
+	 * as the corresponding rows of the result of apply.
+	 *
+	 * In linear mode, RGB images are not supported unless approximation is
+	 * enabled, because ColorConvertOp is much faster on the whole image than
+	 * row by row. Alpha is ignored in linear mode and composed with white
+	 * background otherwise.
+	 *
+	 * @param image input image
+	 * @return the source or null if the type of the image is not supported
+	 */
+	public RowSource getRowSource(BufferedImage image){
+		WritableRaster raster=image.getRaster();
+		int width=image.getWidth();
+		int x0=-raster.getSampleModelTranslateX(), y0=-raster.getSampleModelTranslateY();
+		int type=image.getType();
+		if(isExact(type)){
+			return null;
+		}else if(type==BufferedImage.TYPE_BYTE_GRAY){
+			ComponentSampleModel model=(ComponentSampleModel)raster.getSampleModel();
+			byte[] data=((DataBufferByte)raster.getDataBuffer()).getData();
+			int stride=model.getScanlineStride(), step=model.getPixelStride();
+			int base=raster.getDataBuffer().getOffset()+y0*stride+x0*step+model.getBandOffsets()[0];
+			return (row,buf)->{
+				if(step==1){
+					System.arraycopy(data,base+row*stride,buf,0,width);
+				}else{
+					for(int j=0, ind=base+row*stride;j<width;j++,ind+=step){
+						buf[j]=data[ind];
+					}
+				}
+			};
+		}else if(type==BufferedImage.TYPE_INT_RGB||type==BufferedImage.TYPE_INT_ARGB){
+			SinglePixelPackedSampleModel model=(SinglePixelPackedSampleModel)raster.getSampleModel();
+			int[] data=((DataBufferInt)raster.getDataBuffer()).getData();
+			int stride=model.getScanlineStride();
+			int base=raster.getDataBuffer().getOffset()+y0*stride+x0;
+			if(linear){
+				return (row,buf)->{
+					for(int j=0, ind=base+row*stride;j<width;j++,ind++){
+						int pixel=data[ind];
+						buf[j]=toLinearGray((pixel>>>16)&0xff,(pixel>>>8)&0xff,pixel&0xff);
+					}
+				};
+			}else if(type==BufferedImage.TYPE_INT_RGB){
+				return (row,buf)->{
+					for(int j=0, ind=base+row*stride;j<width;j++,ind++){
+						int pixel=data[ind];
+						buf[j]=(byte)((((pixel>>>16)&0xff)*wR+((pixel>>>8)&0xff)*wG+(pixel&0xff)*wB)/divisor);
+					}
+				};
+			}else{
+				int[] argb=new int[width];
+				PixelKernel kernel=PixelKernel.getDefault();
+				return (row,buf)->{
+					System.arraycopy(data,base+row*stride,argb,0,width);
+					kernel.toGrayscale(argb,buf,0,width,wR,wG,wB);
+				};
+			}
+		}else if(type==BufferedImage.TYPE_3BYTE_BGR||type==BufferedImage.TYPE_4BYTE_ABGR){
+			ComponentSampleModel model=(ComponentSampleModel)raster.getSampleModel();
+			byte[] data=((DataBufferByte)raster.getDataBuffer()).getData();
+			int stride=model.getScanlineStride(), step=model.getPixelStride();
+			int base=raster.getDataBuffer().getOffset()+y0*stride+x0*step;
+			int[] offsets=model.getBandOffsets();
+			int r=offsets[0], g=offsets[1], b=offsets[2];
+			if(linear){
+				return (row,buf)->{
+					for(int j=0, ind=base+row*stride;j<width;j++,ind+=step){
+						buf[j]=toLinearGray(data[ind+r]&0xff,data[ind+g]&0xff,data[ind+b]&0xff);
+					}
+				};
+			}else if(type==BufferedImage.TYPE_3BYTE_BGR){
+				return (row,buf)->{
+					for(int j=0, ind=base+row*stride;j<width;j++,ind+=step){
+						buf[j]=(byte)(((data[ind+r]&0xff)*wR+(data[ind+g]&0xff)*wG+(data[ind+b]&0xff)*wB)/divisor);
+					}
+				};
+			}else{
+				int a=offsets[3];
+				return (row,buf)->{
+					for(int j=0, ind=base+row*stride;j<width;j++,ind+=step){
+						int alpha=data[ind+a]&0xff;
+						buf[j]=(byte)(255-(255-((data[ind+r]&0xff)*wR+(data[ind+g]&0xff)*wG+(data[ind+b]&0xff)*wB)/divisor)*alpha/255);
+					}
+				};
+			}
+		}else if(type==BufferedImage.TYPE_BYTE_INDEXED&&raster.getSampleModel() instanceof ComponentSampleModel){
+			ComponentSampleModel model=(ComponentSampleModel)raster.getSampleModel();
+			byte[] data=((DataBufferByte)raster.getDataBuffer()).getData();
+			int stride=model.getScanlineStride(), step=model.getPixelStride();
+			int base=raster.getDataBuffer().getOffset()+y0*stride+x0*step+model.getBandOffsets()[0];
+			byte[] palette=getPalette((IndexColorModel)image.getColorModel());
+			return (row,buf)->{
+				for(int j=0, ind=base+row*stride;j<width;j++,ind+=step){
+					buf[j]=palette[data[ind]&0xff];
+				}
+			};
+		}else if(type==BufferedImage.TYPE_USHORT_GRAY){
+			ComponentSampleModel model=(ComponentSampleModel)raster.getSampleModel();
+			short[] data=((DataBufferUShort)raster.getDataBuffer()).getData();
+			int stride=model.getScanlineStride(), step=model.getPixelStride();
+			int base=raster.getDataBuffer().getOffset()+y0*stride+x0*step+model.getBandOffsets()[0];
+			byte[] levels=linear?UShortGray.LINEAR:UShortGray.NONLINEAR;
+			return (row,buf)->{
+				for(int j=0, ind=base+row*stride;j<width;j++,ind+=step){
+					buf[j]=levels[data[ind]&0xffff];
+				}
+			};
+		}else{
+			return null;
+		}
+	}
+	/**
+	 * @return if RGB images of the type should be converted by ColorConvertOp
+	 */
+	private boolean isExact(int type){
+		return linear&&!approximate&&(type==BufferedImage.TYPE_INT_RGB||type==BufferedImage.TYPE_INT_ARGB||type==BufferedImage.TYPE_3BYTE_BGR||type==BufferedImage.TYPE_4BYTE_ABGR);
+	}
+	private static byte toLinearGray(int red,int green,int blue){
+		return (byte)Math.min((LINEAR_R[red]+LINEAR_G[green]+LINEAR_B[blue]+(1<<(LINEAR_SHIFT-1)))>>>LINEAR_SHIFT,255);
+	}
+	/**
+	 * Compute the gray levels of the colors in a palette, in the same way as
+	 * the whole image is converted
+	 */
+	private byte[] getPalette(IndexColorModel model){
+		int size=model.getMapSize();
+		byte[] palette=new byte[256];
+		if(linear){
+			WritableRaster raster=model.createCompatibleWritableRaster(size,1);
+			for(int i=0;i<size;i++){
+				raster.setSample(i,0,0,i);
+			}
+			BufferedImage gray=new BufferedImage(size,1,BufferedImage.TYPE_BYTE_GRAY);
+			TO_GRAYSCALE.filter(new BufferedImage(model,raster,false,null),gray);
+			System.arraycopy(((DataBufferByte)gray.getRaster().getDataBuffer()).getData(),0,palette,0,size);
+		}else{
+			int[] argb=new int[size];
+			model.getRGBs(argb);
+			PixelKernel.getDefault().toGrayscale(argb,palette,0,size,wR,wG,wB);
+		}
+		return palette;
+	}
+	/**
+	 * Gray levels of all the 16 bits gray levels, computed once by the
+	 * standard color conversions
+	 */
+	private static final class UShortGray{
+		static final byte[] LINEAR=new byte[65536], NONLINEAR=new byte[65536];
+		static{
+			BufferedImage image=new BufferedImage(65536,1,BufferedImage.TYPE_USHORT_GRAY);
+			short[] data=((DataBufferUShort)image.getRaster().getDataBuffer()).getData();
+			for(int i=0;i<65536;i++){
+				data[i]=(short)i;
+			}
+			BufferedImage gray=new BufferedImage(65536,1,BufferedImage.TYPE_BYTE_GRAY);
+			TO_GRAYSCALE.filter(image,gray);
+			System.arraycopy(((DataBufferByte)gray.getRaster().getDataBuffer()).getData(),0,LINEAR,0,65536);
+			int[] argb=image.getRGB(0,0,65536,1,null,0,65536);
+			for(int i=0;i<65536;i++){
+				NONLINEAR[i]=(byte)argb[i];
+			}
+		}
+	}
 }
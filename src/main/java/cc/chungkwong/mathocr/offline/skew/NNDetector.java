@@ -16,6 +16,7 @@
  */
 package cc.chungkwong.mathocr.offline.skew;
 import cc.chungkwong.mathocr.offline.*;
+import cc.chungkwong.mathocr.offline.preprocessor.*;
 import java.awt.image.*;
 /**
  * Detect skew by Nearest Neighbors Clustering
@@ -31,20 +32,22 @@ public class NNDetector implements SkewDetector{
 	@Override
 	public double detect(BufferedImage image){
 		int width=image.getWidth(), height=image.getHeight();
-		byte[] pixels=((DataBufferByte)image.getRaster().getDataBuffer()).getData();
-		ComponentPool pool=new ComponentPool(pixels,width,height);
+		ComponentPool pool=new ComponentPool(BinaryView.of(image));
+		ComponentIndex index=pool.getIndex();
 		int[] hist=new int[450];
 		for(ConnectedComponent ele:pool.getComponents()){
 			int dx=width, dy=height;
-			for(ConnectedComponent ele2:pool.getComponents()){
-				if(ele!=ele2){
-					int dx1=ele.getLeft()+ele.getRight()-ele2.getLeft()-ele2.getRight();
-					int dy1=ele.getBottom()+ele.getTop()-ele2.getBottom()-ele2.getTop();
-					if(dx1*dx1+dy1*dy1<dx*dx+dy*dy&&dx1*dx1>dy1*dy1){
-						dx=dx1;
-						dy=dy1;
-						//Math.min(Math.min(ele.getWidth(),ele.getHeight()),Math.min(ele2.getWidth(),ele2.getHeight()))*Math.signum(dx1);
-					}
+			int x=ele.getLeft()+ele.getRight(), y=ele.getBottom()+ele.getTop();
+			ConnectedComponent ele2=index.getNearest(x*0.5,y*0.5,(c)->{
+				int dx1=x-c.getLeft()-c.getRight(), dy1=y-c.getBottom()-c.getTop();
+				return c!=ele&&dx1*dx1>dy1*dy1;
+			});
+			if(ele2!=null){
+				int dx1=x-ele2.getLeft()-ele2.getRight();
+				int dy1=y-ele2.getBottom()-ele2.getTop();
+				if(dx1*dx1+dy1*dy1<dx*dx+dy*dy){
+					dx=dx1;
+					dy=dy1;
 				}
 			}
 			++hist[(int)(Math.atan((dy+0.0)/dx)*900/Math.PI+225)];
@@ -16,6 +16,7 @@
  */
 package cc.chungkwong.mathocr.offline.skew;
 import cc.chungkwong.mathocr.offline.*;
+import cc.chungkwong.mathocr.offline.preprocessor.*;
 import java.awt.image.*;
 import java.util.*;
 /**
@@ -45,7 +46,7 @@ public class PPADetector implements SkewDetector{
 	public double detect(BufferedImage image){
 		int width=image.getWidth();
 		int height=image.getHeight();
-		byte[] pixels=((DataBufferByte)image.getRaster().getDataBuffer()).getData();
+		byte[] pixels=GrayView.of(image).toArray();
 		int dx=this.dx;
 		int dy=this.dy;
 		if(dx<=0||dy<=0){
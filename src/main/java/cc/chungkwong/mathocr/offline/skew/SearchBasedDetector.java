@@ -15,6 +15,7 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 package cc.chungkwong.mathocr.offline.skew;
+import cc.chungkwong.mathocr.offline.preprocessor.*;
 import java.awt.image.*;
 /**
  * Search based skew detector
@@ -40,7 +41,7 @@ public abstract class SearchBasedDetector implements SkewDetector{
 	@Override
 	public double detect(BufferedImage image){
 		int width=image.getWidth(), height=image.getHeight();
-		byte[] pixels=((DataBufferByte)image.getRaster().getDataBuffer()).getData();
+		byte[] pixels=GrayView.of(image).toArray();
 		return strategy.search((angle)->getCost(pixels,width,height,angle));
 	}
 	/**
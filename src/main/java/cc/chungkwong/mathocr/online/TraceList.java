@@ -83,6 +83,22 @@ public class TraceList{
 		}
 		return rescaled;
 	}
+	/**
+	 * Scale the coordinates
+	 *
+	 * @param sx factor in x direction
+	 * @param sy factor in y direction
+	 * @return transformed trace list
+	 */
+	public TraceList scale(double sx,double sy){
+		TraceList scaled=new TraceList(new ArrayList<>(getTraces().size()));
+		for(Trace trace:getTraces()){
+			scaled.getTraces().add(new Trace(trace.getPoints().stream().
+					map((point)->new TracePoint((int)Math.round(point.getX()*sx),(int)Math.round(point.getY()*sy))).
+					collect(Collectors.toList())));
+		}
+		return scaled;
+	}
 	/**
 	 * Translate the traces
 	 *
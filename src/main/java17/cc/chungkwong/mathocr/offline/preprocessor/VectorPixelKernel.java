@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2019 Chan Chung Kwong
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.chungkwong.mathocr.offline.preprocessor;
+import java.util.*;
+import jdk.incubator.vector.*;
+/**
+ * Pixel level loops implemented with the Vector API, the results are the same
+ * as the scalar version
+ *
+ * @author Chan Chung Kwong
+ */
+final class VectorPixelKernel extends PixelKernel{
+	private static final VectorSpecies<Integer> INT=IntVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Byte> BYTE=ByteVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Byte> INT_AS_BYTE=VectorSpecies.of(byte.class,VectorShape.forBitSize(Math.max(64,INT.length()*8)));
+	private static final VectorMask<Byte> INT_LANES=INT_AS_BYTE.indexInRange(0,INT.length());
+	VectorPixelKernel(){
+	}
+	@Override
+	public void toGrayscale(int[] argb,byte[] gray,int offset,int length,int wR,int wG,int wB){
+		int divisor=wR+wG+wB;
+		if(Integer.bitCount(divisor)!=1){
+			super.toGrayscale(argb,gray,offset,length,wR,wG,wB);
+			return;
+		}
+		int shift=Integer.numberOfTrailingZeros(divisor);
+		int j=0;
+		for(int bound=INT.loopBound(length);j<bound;j+=INT.length()){
+			IntVector pixel=IntVector.fromArray(INT,argb,j);
+			IntVector alpha=pixel.lanewise(VectorOperators.LSHR,24);
+			IntVector red=pixel.lanewise(VectorOperators.LSHR,16).and(0xff);
+			IntVector green=pixel.lanewise(VectorOperators.LSHR,8).and(0xff);
+			IntVector blue=pixel.and(0xff);
+			IntVector value=red.mul(wR).add(green.mul(wG)).add(blue.mul(wB)).lanewise(VectorOperators.LSHR,shift);
+			value=divideBy255(value.neg().add(255).mul(alpha)).neg().add(255);
+			storeAsBytes(value,gray,offset+j);
+		}
+		for(int ind=offset+j;j<length;j++,ind++){
+			int pixel=argb[j];
+			int alpha=(pixel>>>24)&0xff, red=(pixel>>>16)&0xff, green=(pixel>>>8)&0xff, blue=pixel&0xff;
+			gray[ind]=(byte)(255-(255-(red*wR+green*wG+blue*wB)/divisor)*alpha/255);
+		}
+	}
+	@Override
+	public void meanFilter(byte[] from,byte[] to,int width,int height){
+		if(width<3){
+			super.meanFilter(from,to,width,height);
+			return;
+		}
+		byte[] prev=new byte[width], curr=new byte[width];
+		System.arraycopy(from,0,prev,0,width);
+		for(int i=1, start=width;i<height-1;i++,start+=width){
+			System.arraycopy(from,start,curr,0,width);
+			int next=start+width;
+			int j=1;
+			for(int bound=width-1-INT_AS_BYTE.length();j<=bound;j+=INT.length()){
+				IntVector sum=load(prev,j-1).add(load(prev,j)).add(load(prev,j+1))
+						.add(load(curr,j-1)).add(load(curr,j)).add(load(curr,j+1))
+						.add(load(from,next+j-1)).add(load(from,next+j)).add(load(from,next+j+1));
+				storeAsBytes(sum.mul(3641).lanewise(VectorOperators.LSHR,15),to,start+j);
+			}
+			for(;j<width-1;j++){
+				to[start+j]=(byte)(((prev[j-1]&0xFF)+(prev[j]&0xFF)+(prev[j+1]&0xFF)
+						+(curr[j-1]&0xFF)+(curr[j]&0xFF)+(curr[j+1]&0xFF)
+						+(from[next+j-1]&0xFF)+(from[next+j]&0xFF)+(from[next+j+1]&0xFF))/9);
+			}
+			to[start]=curr[0];
+			to[start+width-1]=curr[width-1];
+			byte[] tmp=prev;
+			prev=curr;
+			curr=tmp;
+		}
+	}
+	@Override
+	public void threshold(byte[] from,byte[] to,int length,int limit){
+		if(limit<0||limit>=255){
+			Arrays.fill(to,0,length,limit<0?(byte)0xff:0x00);
+			return;
+		}
+		ByteVector white=ByteVector.broadcast(BYTE,(byte)0xff);
+		int i=0;
+		for(int bound=BYTE.loopBound(length);i<bound;i+=BYTE.length()){
+			VectorMask<Byte> black=ByteVector.fromArray(BYTE,from,i).compare(VectorOperators.UNSIGNED_LE,(byte)limit);
+			white.blend((byte)0x00,black).intoArray(to,i);
+		}
+		for(;i<length;i++){
+			to[i]=(from[i]&0xFF)<=limit?0x00:(byte)0xff;
+		}
+	}
+	@Override
+	public void invert(byte[] from,byte[] to,int length){
+		int i=0;
+		for(int bound=BYTE.loopBound(length);i<bound;i+=BYTE.length()){
+			ByteVector.fromArray(BYTE,from,i).not().intoArray(to,i);
+		}
+		for(;i<length;i++){
+			to[i]=(byte)(~from[i]);
+		}
+	}
+	@Override
+	public int countAtMost(byte[] pixels,int limit){
+		if(limit<0||limit>=255){
+			return limit<0?0:pixels.length;
+		}
+		int count=0;
+		int i=0;
+		for(int bound=BYTE.loopBound(pixels.length);i<bound;i+=BYTE.length()){
+			count+=ByteVector.fromArray(BYTE,pixels,i).compare(VectorOperators.UNSIGNED_LE,(byte)limit).trueCount();
+		}
+		for(;i<pixels.length;i++){
+			if((pixels[i]&0xFF)<=limit){
+				++count;
+			}
+		}
+		return count;
+	}
+	@Override
+	public int[] histogram(byte[] pixels){
+		//scatter is not available, so use independent histograms to break dependency chains
+		int[] h0=new int[256], h1=new int[256], h2=new int[256], h3=new int[256];
+		int i=0;
+		for(int bound=pixels.length&~3;i<bound;i+=4){
+			++h0[pixels[i]&0xFF];
+			++h1[pixels[i+1]&0xFF];
+			++h2[pixels[i+2]&0xFF];
+			++h3[pixels[i+3]&0xFF];
+		}
+		for(;i<pixels.length;i++){
+			++h0[pixels[i]&0xFF];
+		}
+		for(int j=0, bound=INT.loopBound(256);j<bound;j+=INT.length()){
+			IntVector.fromArray(INT,h0,j).add(IntVector.fromArray(INT,h1,j))
+					.add(IntVector.fromArray(INT,h2,j)).add(IntVector.fromArray(INT,h3,j)).intoArray(h0,j);
+		}
+		return h0;
+	}
+	/**
+	 * Divide integers between 0 and 255*255 by 255 exactly without division
+	 * or floating point conversion, which are slow in vector form
+	 */
+	private static IntVector divideBy255(IntVector dividend){
+		return dividend.add(dividend.lanewise(VectorOperators.LSHR,8)).add(1).lanewise(VectorOperators.LSHR,8);
+	}
+	private static IntVector load(byte[] pixels,int offset){
+		return ((IntVector)ByteVector.fromArray(INT_AS_BYTE,pixels,offset).convertShape(VectorOperators.B2I,INT,0)).and(0xFF);
+	}
+	private static void storeAsBytes(IntVector vector,byte[] pixels,int offset){
+		ByteVector bytes=(ByteVector)vector.convertShape(VectorOperators.I2B,INT_AS_BYTE,0);
+		if(INT_AS_BYTE.length()==INT.length()){
+			bytes.intoArray(pixels,offset);
+		}else{
+			bytes.intoArray(pixels,offset,INT_LANES);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2019 Chan Chung Kwong
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cc.chungkwong.mathocr;
+import cc.chungkwong.mathocr.offline.preprocessor.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+import org.openjdk.jmh.runner.*;
+import org.openjdk.jmh.runner.options.*;
+/**
+ * Compare the scalar and vectorized pixel kernels, run it against the packaged
+ * jar built with Java 17 or above. The run is aborted if the vectorized kernel
+ * is not available, e.g. when the classes directory is used instead.
+ *
+ * @author Chan Chung Kwong
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=3,time=1)
+@Measurement(iterations=5,time=1)
+@Fork(value=1,jvmArgsAppend={"--add-modules","jdk.incubator.vector"})
+public class PixelKernelBenchmark{
+	@Param({"scalar","vector"})
+	public String kernel;
+	@Param({"1000x1000","2000x2000","4000x3000"})
+	public String size;
+	private PixelKernel pixelKernel;
+	private int width, height;
+	private int[] argb;
+	private byte[] from, to;
+	@Setup
+	public void setup(){
+		pixelKernel=kernel.equals("vector")?PixelKernel.getVector():PixelKernel.getScalar();
+		if(pixelKernel==null){
+			throw new IllegalStateException("Vector kernel is unavailable, run against the multi-release jar built with Java 17 or above");
+		}
+		int split=size.indexOf('x');
+		width=Integer.parseInt(size.substring(0,split));
+		height=Integer.parseInt(size.substring(split+1));
+		Random random=new Random(0);
+		argb=new int[width];
+		for(int i=0;i<width;i++){
+			argb[i]=random.nextInt();
+		}
+		from=new byte[width*height];
+		random.nextBytes(from);
+		to=new byte[width*height];
+	}
+	@Benchmark
+	public byte[] toGrayscale(){
+		for(int i=0, ind=0;i<height;i++,ind+=width){
+			pixelKernel.toGrayscale(argb,to,ind,width,316,624,84);
+		}
+		return to;
+	}
+	@Benchmark
+	public byte[] meanFilter(){
+		pixelKernel.meanFilter(from,to,width,height);
+		return to;
+	}
+	@Benchmark
+	public byte[] threshold(){
+		pixelKernel.threshold(from,to,from.length,128);
+		return to;
+	}
+	@Benchmark
+	public byte[] invert(){
+		pixelKernel.invert(from,to,from.length);
+		return to;
+	}
+	@Benchmark
+	public int countAtMost(){
+		return pixelKernel.countAtMost(from,128);
+	}
+	@Benchmark
+	public int[] histogram(){
+		return pixelKernel.histogram(from);
+	}
+	public static void main(String[] args) throws RunnerException{
+		Options options=new OptionsBuilder().include(PixelKernelBenchmark.class.getSimpleName()).shouldFailOnError(true).build();
+		new Runner(options).run();
+	}
+}